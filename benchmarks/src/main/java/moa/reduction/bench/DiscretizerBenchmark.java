@@ -0,0 +1,103 @@
+package moa.reduction.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import moa.reduction.bayes.IDAdiscretize;
+import moa.reduction.bayes.IFFDdiscretize;
+import moa.reduction.bayes.LOFDiscretizer;
+import moa.reduction.bayes.OCdiscretize;
+import moa.reduction.bayes.PIDdiscretize;
+import moa.reduction.core.MOADiscretize;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the online discretizers: updating the scheme with a new instance, and
+ * discretizing an instance with the current scheme. Discretizers are trained until their
+ * scheme is ready before measuring. Run with {@code -prof gc} to get allocations per operation.
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DiscretizerBenchmark {
+
+	/** Instances generated for each stream */
+	public static final int STREAM_SIZE = 8192;
+
+	/** Instances used to initialize the discretizers before measuring */
+	public static final int INIT_INSTANCES = 2000;
+
+	@Param({"PID", "IFFD", "OC", "IDA", "LOF"})
+	public String method;
+
+	@Param({"10", "100"})
+	public int numAttributes;
+
+	@Param({"2", "10"})
+	public int numClasses;
+
+	@Param({"UNIFORM", "LOGISTIC", "EXPONENTIAL"})
+	public SyntheticStream.Distribution distribution;
+
+	protected SyntheticStream stream;
+	protected MOADiscretize discretizer;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		stream = new SyntheticStream(numAttributes, numClasses, distribution, 0, false, STREAM_SIZE, 1);
+		discretizer = newDiscretizer(method, numClasses);
+		for (int i = 0; i < INIT_INSTANCES; i++) {
+			discretizer.updateEvaluator(stream.next());
+		}
+	}
+
+	/**
+	 * Create a discretizer with the parameters used by the benchmarks (LOFD is initialized
+	 * with fewer instances than by default, so that it is ready after the setup).
+	 * @param method PID, IFFD, OC, IDA or LOF.
+	 * @param numClasses Number of classes of the stream.
+	 * @return New discretizer.
+	 */
+	public static MOADiscretize newDiscretizer(String method, int numClasses) {
+		if(method.equals("PID")) {
+			return new PIDdiscretize();
+		} else if(method.equals("IFFD")) {
+			return new IFFDdiscretize();
+		} else if(method.equals("OC")) {
+			return new OCdiscretize(numClasses);
+		} else if(method.equals("IDA")) {
+			return new IDAdiscretize();
+		} else if(method.equals("LOF")) {
+			return new LOFDiscretizer(INIT_INSTANCES / 2, INIT_INSTANCES / 2, 3, 10000);
+		}
+		throw new IllegalArgumentException("Unknown discretizer: " + method);
+	}
+
+	@Benchmark
+	public MOADiscretize updateEvaluator() {
+		discretizer.updateEvaluator(stream.next());
+		return discretizer;
+	}
+
+	@Benchmark
+	public double[] applyDiscretization() {
+		// Instances are discretized lazily, so all the values are read
+		return discretizer.applyDiscretization(stream.next()).toDoubleArray();
+	}
+}
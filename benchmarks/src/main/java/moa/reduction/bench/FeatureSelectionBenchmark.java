@@ -0,0 +1,145 @@
+package moa.reduction.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import moa.reduction.bayes.IncrInfoThAttributeEval;
+import moa.reduction.bayes.OFSGDAttributeEval;
+import moa.reduction.core.FeatureProjection;
+import moa.reduction.core.MOAAttributeEvaluator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import weka.attributeSelection.AttributeEvaluator;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+/**
+ * Cost of the streaming feature selection evaluators: updating the evaluator with a new
+ * instance, and computing the scores (applySelection) plus ranking the attributes as
+ * ReductionClassifier does when a new selection is due. Run with {@code -prof gc} to get
+ * allocations per operation.
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FeatureSelectionBenchmark {
+
+	/** Instances generated for each stream */
+	public static final int STREAM_SIZE = 8192;
+
+	/** Instances used to fill the evaluators before measuring */
+	public static final int INIT_INSTANCES = 1000;
+
+	/** Ready-made instances used by each ranking iteration (a power of two) */
+	public static final int POOL_SIZE = 1024;
+
+	@State(Scope.Thread)
+	public static class EvaluatorState {
+
+		/** INFOGAIN and SU are the two modes of IncrInfoThAttributeEval */
+		@Param({"INFOGAIN", "SU", "OFSGD"})
+		public String method;
+
+		@Param({"10", "100", "1000"})
+		public int numAttributes;
+
+		/** Distinct values per attribute and class */
+		@Param({"10", "100"})
+		public int cardinality;
+
+		@Param({"2", "10"})
+		public int numClasses;
+
+		@Param({"false", "true"})
+		public boolean sparse;
+
+		protected SyntheticStream stream;
+		protected MOAAttributeEvaluator evaluator;
+		protected int numToSelect;
+
+		@Setup(Level.Trial)
+		public void setup() throws Exception {
+			stream = new SyntheticStream(numAttributes, numClasses, SyntheticStream.Distribution.UNIFORM,
+					cardinality, sparse, STREAM_SIZE, 1);
+			numToSelect = Math.max(1, numAttributes / 10);
+			evaluator = newEvaluator(method, numToSelect);
+			for (int i = 0; i < INIT_INSTANCES; i++) {
+				evaluator.updateEvaluator(stream.next());
+			}
+		}
+	}
+
+	/**
+	 * Scores are only recomputed if the evaluator has been updated since the last selection,
+	 * so each ranking first feeds one instance from a pool taken from the stream before the
+	 * iteration. A per-invocation setup would be timed by JMH for such short calls.
+	 */
+	@State(Scope.Thread)
+	public static class RankingState extends EvaluatorState {
+
+		protected Instance[] pool;
+		protected int next;
+
+		@Setup(Level.Iteration)
+		public void fillPool() {
+			pool = new Instance[POOL_SIZE];
+			for (int i = 0; i < POOL_SIZE; i++) {
+				pool[i] = stream.next();
+			}
+			next = 0;
+		}
+
+		public Instance nextInput() {
+			return pool[next++ & (POOL_SIZE - 1)];
+		}
+	}
+
+	/**
+	 * Create an evaluator as ReductionClassifier does.
+	 * @param method INFOGAIN, SU or OFSGD.
+	 * @param numFeatures Number of features to select (OFSGD truncation).
+	 * @return New evaluator.
+	 */
+	public static MOAAttributeEvaluator newEvaluator(String method, int numFeatures) {
+		if(method.equals("INFOGAIN")) {
+			return new IncrInfoThAttributeEval(1);
+		} else if(method.equals("SU")) {
+			return new IncrInfoThAttributeEval(2);
+		} else if(method.equals("OFSGD")) {
+			return new OFSGDAttributeEval(numFeatures);
+		}
+		throw new IllegalArgumentException("Unknown evaluator: " + method);
+	}
+
+	@Benchmark
+	public MOAAttributeEvaluator updateEvaluator(EvaluatorState state) throws Exception {
+		state.evaluator.updateEvaluator(state.stream.next());
+		return state.evaluator;
+	}
+
+	/**
+	 * Includes one update, measured on its own by updateEvaluator.
+	 */
+	@Benchmark
+	public int[] applySelectionAndRank(RankingState state) throws Exception {
+		state.evaluator.updateEvaluator(state.nextInput());
+		state.evaluator.applySelection();
+		return FeatureProjection.rank((AttributeEvaluator) state.evaluator,
+				state.stream.getHeader(), state.numToSelect);
+	}
+}
@@ -0,0 +1,207 @@
+package moa.reduction.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+
+import moa.classifiers.Classifier;
+import moa.core.Utils;
+import moa.options.ClassOption;
+import moa.reduction.core.CaseBaseModel;
+import moa.streams.generators.RandomRBFGeneratorDrift;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+/**
+ * Macro benchmark for the instance selection classifiers (BBNR, ICF, NEFCS-SRR and FISH).
+ * These methods run an expensive maintenance every period instances, so they are measured
+ * on complete test-then-train runs rather than with JMH. Each method is run over a drifting
+ * RBF stream (fixed seeds) for every case-base size, which is used as period and, for
+ * NEFCS-SRR, as size limit. One CSV line is printed per run with:
+ * <ul>
+ * <li>number of maintenance cycles, and their mean and maximum wall time (ms). A cycle is
+ * charged with the prediction and training of the instance that triggers it (FISH maintains
+ * the training set when predicting, the case-base editors when training).</li>
+ * <li>percentiles of the prediction latency out of the maintenance cycles (us).</li>
+ * <li>peak case-base size, peak heap used after a cycle, and heap retained after a
+ * full GC at the end of the run (MB).</li>
+ * <li>accuracy (test-then-train).</li>
+ * </ul>
+ *
+ * <p>The case-base editors need the modified jCOLIBRI2.jar: they are only compiled into
+ * benchmarks.jar when it is found in the lib directory (see pom.xml), and must be in the
+ * classpath to run them:</p>
+ *
+ * java -cp benchmarks/target/benchmarks.jar:lib/jCOLIBRI2.jar moa.reduction.bench.InstanceSelectionBenchmark
+ * [-n instances] [-sizes 250,500,1000] [-methods BBNR,ICF,NEFCSSRR,FISH] [-drift 0.001] [-seed 1]
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+public class InstanceSelectionBenchmark {
+
+	public static final String[] METHODS = {"BBNR", "ICF", "NEFCSSRR", "FISH"};
+
+	/** Default number of instances per run */
+	public static final int NUM_INSTANCES = 5000;
+
+	/** Default case-base sizes (period, and limit for NEFCS-SRR) */
+	public static final int[] SIZES = {250, 500, 1000};
+
+	/** Default speed of change of the drifting centroids */
+	public static final double DRIFT_SPEED = 0.001;
+
+	private static final double MB = 1024 * 1024;
+
+	public static void main(String[] args) throws Exception {
+		int numInstances = NUM_INSTANCES;
+		int[] sizes = SIZES;
+		String[] methods = METHODS;
+		double drift = DRIFT_SPEED;
+		int seed = 1;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if(args[i].equals("-n")) {
+				numInstances = Integer.parseInt(args[i + 1]);
+			} else if(args[i].equals("-sizes")) {
+				String[] s = args[i + 1].split(",");
+				sizes = new int[s.length];
+				for (int j = 0; j < s.length; j++)
+					sizes[j] = Integer.parseInt(s[j].trim());
+			} else if(args[i].equals("-methods")) {
+				methods = args[i + 1].split(",");
+			} else if(args[i].equals("-drift")) {
+				drift = Double.parseDouble(args[i + 1]);
+			} else if(args[i].equals("-seed")) {
+				seed = Integer.parseInt(args[i + 1]);
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+
+		System.out.println("method,size,instances,cycles,cycle mean (ms),cycle max (ms),"
+				+ "predict p50 (us),predict p95 (us),predict p99 (us),predict max (us),"
+				+ "peak case base,peak heap (MB),final heap (MB),accuracy");
+		for (String method : methods) {
+			for (int size : sizes) {
+				if(!isAvailable(method.trim())) {
+					System.err.println(method + " skipped: " + getCommandLine(method.trim(), size)
+							+ " not found (is jCOLIBRI2.jar in the classpath?)");
+					break;
+				}
+				System.out.println(run(method.trim(), size, numInstances, drift, seed));
+			}
+		}
+	}
+
+	/**
+	 * Get the MOA command line of a method for a given case-base size.
+	 * @param method BBNR, ICF, NEFCSSRR or FISH.
+	 * @param size Period (and size limit for NEFCS-SRR).
+	 * @return Command line for ClassOption.
+	 */
+	public static String getCommandLine(String method, int size) {
+		if(method.equals("BBNR")) {
+			return "competence.BBNRFullCB -p " + size;
+		} else if(method.equals("ICF")) {
+			return "competence.ICFFullCB -p " + size;
+		} else if(method.equals("NEFCSSRR")) {
+			return "competence.NEFCSSRR -p " + size + " -s " + size;
+		} else if(method.equals("FISH")) {
+			return "meta.FISH -p " + size;
+		}
+		throw new IllegalArgumentException("Unknown method: " + method);
+	}
+
+	/**
+	 * Check whether a method and its dependencies are in the classpath.
+	 */
+	public static boolean isAvailable(String method) {
+		String cli = getCommandLine(method, 1);
+		try {
+			Class.forName("moa.classifiers." + cli.substring(0, cli.indexOf(' ')));
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		} catch (NoClassDefFoundError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Run a method over a new stream and summarize the run as a CSV line.
+	 */
+	public static String run(String method, int size, int numInstances, double drift, int seed) throws Exception {
+		RandomRBFGeneratorDrift stream = new RandomRBFGeneratorDrift();
+		stream.modelRandomSeedOption.setValue(seed);
+		stream.instanceRandomSeedOption.setValue(seed);
+		stream.speedChangeOption.setValue(drift);
+		stream.prepareForUse();
+
+		Classifier learner = (Classifier) ClassOption.cliStringToObject(
+				getCommandLine(method, size), Classifier.class, null);
+		learner.setModelContext(stream.getHeader());
+		learner.prepareForUse();
+
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		System.gc();
+
+		long[] cycles = new long[numInstances / size + 1];
+		long[] predictions = new long[numInstances];
+		int numCycles = 0, numPredictions = 0, correct = 0, peakSize = 0;
+		long peakHeap = 0;
+		for (int i = 0; i < numInstances; i++) {
+			Instance inst = stream.nextInstance().getData();
+			boolean cycle = i >= size && i % size == 0;
+
+			long start = System.nanoTime();
+			double[] votes = learner.getVotesForInstance(inst);
+			long predicted = System.nanoTime();
+			learner.trainOnInstance(inst);
+			long trained = System.nanoTime();
+
+			if(Utils.maxIndex(votes) == (int) inst.classValue())
+				correct++;
+			if(cycle) {
+				cycles[numCycles++] = trained - start;
+				peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+			} else {
+				predictions[numPredictions++] = predicted - start;
+			}
+			if(learner instanceof CaseBaseModel)
+				peakSize = Math.max(peakSize, ((CaseBaseModel) learner).getCaseBaseSize());
+		}
+		System.gc();
+		long finalHeap = memory.getHeapMemoryUsage().getUsed();
+		peakHeap = Math.max(peakHeap, finalHeap);
+
+		long totalCycles = 0, maxCycle = 0;
+		for (int i = 0; i < numCycles; i++) {
+			totalCycles += cycles[i];
+			maxCycle = Math.max(maxCycle, cycles[i]);
+		}
+		Arrays.sort(predictions, 0, numPredictions);
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(method).append(',').append(size).append(',').append(numInstances).append(',')
+			.append(numCycles).append(',')
+			.append(String.format(Locale.US, "%.3f,%.3f,", numCycles == 0 ? 0 : totalCycles / 1e6 / numCycles, maxCycle / 1e6))
+			.append(String.format(Locale.US, "%.1f,%.1f,%.1f,%.1f,",
+					percentile(predictions, numPredictions, 0.5) / 1e3,
+					percentile(predictions, numPredictions, 0.95) / 1e3,
+					percentile(predictions, numPredictions, 0.99) / 1e3,
+					percentile(predictions, numPredictions, 1) / 1e3))
+			.append(peakSize).append(',')
+			.append(String.format(Locale.US, "%.1f,%.1f,%.4f", peakHeap / MB, finalHeap / MB, (double) correct / numInstances));
+		return sb.toString();
+	}
+
+	/**
+	 * Nearest-rank percentile of the first count values (sorted).
+	 */
+	private static long percentile(long[] sorted, int count, double q) {
+		if(count == 0)
+			return 0;
+		int rank = (int) Math.ceil(q * count);
+		return sorted[Math.max(0, Math.min(count, rank) - 1)];
+	}
+}
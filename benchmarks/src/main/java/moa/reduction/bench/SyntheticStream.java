@@ -0,0 +1,133 @@
+package moa.reduction.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.yahoo.labs.samoa.instances.Attribute;
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+import com.yahoo.labs.samoa.instances.SparseInstance;
+
+/**
+ * In-memory synthetic stream for benchmarks. A fixed number of instances is generated
+ * up front (numeric attributes plus a nominal class as last attribute) and then served
+ * in a loop, so benchmarks neither read files nor pay for generation.
+ *
+ * <p>Values are drawn from the chosen distribution and, for one out of three attributes,
+ * shifted by class so that discretizers and evaluators find some structure. Cardinality
+ * limits the number of distinct values per attribute and class (0 for continuous).</p>
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+public class SyntheticStream {
+
+	public enum Distribution { UNIFORM, LOGISTIC, EXPONENTIAL }
+
+	/** Fraction of non-zero values in sparse instances */
+	public static final double SPARSE_DENSITY = 0.1;
+
+	protected final Instances header;
+	protected final Instance[] instances;
+	protected int next = 0;
+
+	/**
+	 * Generate a stream.
+	 * @param numAttributes Number of numeric attributes (class not included).
+	 * @param numClasses Number of class labels.
+	 * @param distribution Distribution of the values.
+	 * @param cardinality Distinct values per attribute and class (0 for continuous values).
+	 * @param sparse Whether to generate sparse instances.
+	 * @param size Number of instances generated (served in a loop).
+	 * @param seed Random seed.
+	 */
+	public SyntheticStream(int numAttributes, int numClasses, Distribution distribution,
+			int cardinality, boolean sparse, int size, long seed) {
+		List<Attribute> atts = new ArrayList<Attribute>(numAttributes + 1);
+		for (int i = 0; i < numAttributes; i++) {
+			atts.add(new Attribute("att" + i));
+		}
+		List<String> labels = new ArrayList<String>(numClasses);
+		for (int i = 0; i < numClasses; i++) {
+			labels.add("class" + i);
+		}
+		atts.add(new Attribute("class", labels));
+		header = new Instances("synthetic", atts, 0);
+		header.setClassIndex(numAttributes);
+
+		Random rnd = new Random(seed);
+		instances = new Instance[size];
+		double[] values = new double[numAttributes + 1];
+		int[] indices = new int[numAttributes + 1];
+		for (int n = 0; n < size; n++) {
+			int cls = rnd.nextInt(numClasses);
+			Instance inst;
+			if(sparse) {
+				int nnz = 0;
+				for (int i = 0; i < numAttributes; i++) {
+					if(rnd.nextDouble() < SPARSE_DENSITY) {
+						indices[nnz] = i;
+						values[nnz++] = value(rnd, distribution, cardinality, i, cls);
+					}
+				}
+				indices[nnz] = numAttributes;
+				values[nnz++] = cls;
+				inst = new SparseInstance(1.0, Arrays.copyOf(values, nnz),
+						Arrays.copyOf(indices, nnz), numAttributes + 1);
+			} else {
+				for (int i = 0; i < numAttributes; i++) {
+					values[i] = value(rnd, distribution, cardinality, i, cls);
+				}
+				values[numAttributes] = cls;
+				inst = new DenseInstance(1.0, values.clone());
+			}
+			inst.setDataset(header);
+			instances[n] = inst;
+		}
+	}
+
+	private static double value(Random rnd, Distribution distribution, int cardinality, int att, int cls) {
+		double u = rnd.nextDouble();
+		if(cardinality > 0)
+			u = (Math.floor(u * cardinality) + 0.5) / cardinality;
+		double v;
+		switch (distribution) {
+		case LOGISTIC:
+			v = Math.log(u / (1 - u));
+			break;
+		case EXPONENTIAL:
+			v = -Math.log(1 - u);
+			break;
+		default:
+			v = u;
+			break;
+		}
+		return att % 3 == 0 ? v + 0.5 * cls : v;
+	}
+
+	/**
+	 * @return Header of the stream (class is the last attribute).
+	 */
+	public Instances getHeader() {
+		return header;
+	}
+
+	/**
+	 * @return All the generated instances.
+	 */
+	public Instance[] getInstances() {
+		return instances;
+	}
+
+	/**
+	 * @return Next instance (the stream starts over after the last one).
+	 */
+	public Instance next() {
+		Instance inst = instances[next];
+		if(++next == instances.length)
+			next = 0;
+		return inst;
+	}
+}
@@ -26,6 +26,7 @@ import jcolibri.method.reuse.classification.KNNClassificationMethod;
 import jcolibri.method.reuse.classification.MajorityVotingMethod;
 import moa.classifiers.AbstractClassifier;
 import moa.core.Measurement;
+import moa.reduction.core.CaseBaseModel;
 
 import com.yahoo.labs.samoa.instances.Instance;
 
@@ -40,7 +41,7 @@ import com.yahoo.labs.samoa.instances.Instance;
  *
  */
 @SuppressWarnings("serial")
-public class MaintainedCB extends AbstractClassifier {
+public class MaintainedCB extends AbstractClassifier implements CaseBaseModel {
 
 	public IntOption kOption = new IntOption("neighbors", 'k',
             "Number of neighbors used in search.", 3, 1, Integer.MAX_VALUE);
@@ -143,7 +144,6 @@ public class MaintainedCB extends AbstractClassifier {
         	TwoStepCaseBaseEditMethod maintenance = getMaintenanceMethod();
     		Collection<CBRCase> deleted = maintenance.retrieveCasesToDelete(_caseBase.getCases(), wekaSimConfig);
     		_caseBase.forgetCases(deleted);		
-    		System.out.println("\nNum Cases in the new casebase: " + _caseBase.getCases().size());
         }
         index++;
     }
@@ -159,7 +159,12 @@ public class MaintainedCB extends AbstractClassifier {
 
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
-        return null;
+        return new Measurement[]{new Measurement("case base size", getCaseBaseSize())};
+    }
+
+    @Override
+    public int getCaseBaseSize() {
+    	return _caseBase == null ? 0 : _caseBase.getCases().size();
     }
 
     @Override
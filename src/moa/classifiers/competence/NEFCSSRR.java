@@ -116,7 +116,6 @@ public class NEFCSSRR extends MaintainedCB {
             	_caseBase.learnCases(nc);
         	}
         		
-        	System.out.println("\nNum Cases in the new casebase: " + _caseBase.getCases().size());
     		resetLearningImpl();
         }
         index++;
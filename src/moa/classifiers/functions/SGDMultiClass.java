@@ -86,6 +86,9 @@ public class SGDMultiClass extends AbstractClassifier implements Regressor{
 
     protected static final int SQUAREDLOSS = 2;
 
+    /** Attributes used by the model (feature selection), null for all */
+    protected boolean[] m_attributeMask = null;
+
     /** The current loss function to minimize */
     protected int m_loss = HINGE;
 
@@ -150,6 +153,37 @@ public class SGDMultiClass extends AbstractClassifier implements Regressor{
         return m_learningRate;
     }
 
+    /**
+     * Restrict the model to a feature selection. The weights of deselected
+     * attributes are set to zero and kept there until they are selected again.
+     * The mask survives resets of the classifier.
+     *
+     * @param mask whether each instance attribute is selected, null for all
+     */
+    public void setAttributeMask(boolean[] mask) {
+        m_attributeMask = mask;
+        if (mask != null && m_weights != null) {
+            for (int i = 0; i < m_weights.length; i++) {
+                for (int j = 0; j < m_weights[i].numValues() && j < mask.length; j++) {
+                    if (!mask[j]) {
+                        m_weights[i].setValue(j, 0);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether an attribute is used by the model.
+     *
+     * @param attIndex the instance attribute index
+     * @return true if the attribute is selected
+     */
+    public boolean isAttributeSelected(int attIndex) {
+        return m_attributeMask == null || attIndex >= m_attributeMask.length
+                || m_attributeMask[attIndex];
+    }
+
     /**
      * Reset the classifier.
      */
@@ -274,7 +308,8 @@ public class SGDMultiClass extends AbstractClassifier implements Regressor{
                 int n1 = instance.numValues();
                 for (int p1 = 0; p1 < n1; p1++) {
                     int indS = instance.index(p1);
-                    if (indS != instance.classIndex() && !instance.isMissingSparse(p1)) {
+                    if (indS != instance.classIndex() && !instance.isMissingSparse(p1)
+                            && isAttributeSelected(indS)) {
                         m_weights[classLabel].addToValue(indS, factor * instance.valueSparse(p1));
                     }
                 }
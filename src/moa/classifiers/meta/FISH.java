@@ -8,6 +8,7 @@ import java.util.List;
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.lazy.kNN;
 import moa.core.Measurement;
+import moa.reduction.core.CaseBaseModel;
 import moa.options.ClassOption;
 import weka.classifiers.Classifier;
 import weka.core.Attribute;
@@ -29,7 +30,7 @@ import com.yahoo.labs.samoa.instances.Instance;
  */
 @SuppressWarnings("serial")
 // Version 2 of FISH family of algorithms.
-public class FISH extends AbstractClassifier {
+public class FISH extends AbstractClassifier implements CaseBaseModel {
 
     public ClassOption baseLearnerOption = new ClassOption("baseLearner", 'l',
             "Classifier to train.", Classifier.class, "lazy.IBk");
@@ -48,6 +49,7 @@ public class FISH extends AbstractClassifier {
     protected Classifier testClassifier;
     protected List<STInstance> buffer;
     protected long index = 0;
+    protected int trainingSetSize = 0;
     protected int classIndex;
     protected weka.core.Instances emptyDataset;
   
@@ -79,6 +81,7 @@ public class FISH extends AbstractClassifier {
     	this.buffer.add(new STInstance(winst, index));
         if (this.index < this.periodOption.getValue()) { 
         	trainClassifier(testClassifier, buffer);
+        	trainingSetSize = buffer.size();
         }       
         
         this.index++;
@@ -191,7 +194,7 @@ public class FISH extends AbstractClassifier {
             	}
             }
             List<STInstance> lastTrain = buffer.subList(0, min + this.kOption.getValue());
-            System.out.println("\nNum Cases in the new casebase: " + lastTrain.size());
+            trainingSetSize = lastTrain.size();
             if(testClassifier == null){
             	this.testClassifier = ((Classifier) getPreparedClassOption(this.baseLearnerOption));
         		if(testClassifier instanceof kNN){
@@ -231,7 +234,15 @@ public class FISH extends AbstractClassifier {
 
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
-        return null;
+        return new Measurement[]{new Measurement("case base size", getCaseBaseSize())};
+    }
+
+    /**
+     * @return Number of instances in the last training set selected.
+     */
+    @Override
+    public int getCaseBaseSize() {
+    	return trainingSetSize;
     }
     
     class STInstance implements Comparable<STInstance>{
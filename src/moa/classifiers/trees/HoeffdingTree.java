@@ -420,6 +420,13 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
             for (int i = 0; i < inst.numAttributes() - 1; i++) {
                 int instAttIndex = modelAttIndexToInstanceAttIndex(i, inst);
                 AttributeClassObserver obs = this.attributeObservers.get(i);
+                if (!ht.isAttributeSelected(instAttIndex)) {
+                    // deselected: drop the observer, it is created again on reselection
+                    if (obs != null && !(obs instanceof NullAttributeClassObserver)) {
+                        this.attributeObservers.set(i, null);
+                    }
+                    continue;
+                }
                 if (obs == null) {
                     obs = inst.attribute(instAttIndex).isNominal() ? ht.newNominalClassObserver() : ht.newNumericClassObserver();
                     this.attributeObservers.set(i, obs);
@@ -486,6 +493,26 @@ public FlagOption binarySplitsOption = new FlagOption("binarySplits", 'b',
 
     protected boolean growthAllowed;
 
+    protected boolean[] attributeMask = null;
+
+    /**
+     * Restricts the attributes observed by the tree to a feature selection.
+     * Leaves drop the observers of deselected attributes the next time they
+     * learn, and create them again if the attributes are selected later.
+     * Existing split nodes are kept. The mask survives model resets.
+     *
+     * @param mask whether each instance attribute is selected, null for all
+     */
+    public void setAttributeMask(boolean[] mask) {
+        this.attributeMask = mask;
+    }
+
+    public boolean isAttributeSelected(int instAttIndex) {
+        return this.attributeMask == null
+                || instAttIndex >= this.attributeMask.length
+                || this.attributeMask[instAttIndex];
+    }
+
     public int calcByteSize() {
         int size = (int) SizeOf.sizeOf(this);
         if (this.treeRoot != null) {
@@ -0,0 +1,110 @@
+package moa.reduction.bayes;
+
+/**
+ * Indexed max-heap of float gains, used by {@link LOFDiscretizer} to pick the best merge of
+ * adjacent intervals. Entries are identified by an integer id (0 to capacity - 1), so their
+ * gain can be updated or removed in O(log n). Ties are broken by the lowest id, which keeps
+ * the choice of a linear scan that takes the first maximum.
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+public class GainHeap {
+
+	private final int[] heap;
+	// Position of each id in the heap (-1 if not present)
+	private final int[] pos;
+	private final float[] gain;
+	private int size = 0;
+
+	public GainHeap(int capacity) {
+		heap = new int[capacity];
+		pos = new int[capacity];
+		gain = new float[capacity];
+		for (int i = 0; i < capacity; i++)
+			pos[i] = -1;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the id with the maximum gain (the lowest one if tied).
+	 */
+	public int peek() {
+		return heap[0];
+	}
+
+	public float gain(int id) {
+		return gain[id];
+	}
+
+	public boolean contains(int id) {
+		return pos[id] >= 0;
+	}
+
+	/**
+	 * Insert an id or update its gain.
+	 */
+	public void set(int id, float value) {
+		gain[id] = value;
+		if(pos[id] < 0) {
+			heap[size] = id;
+			pos[id] = size;
+			up(size++);
+		} else {
+			up(pos[id]);
+			down(pos[id]);
+		}
+	}
+
+	public void remove(int id) {
+		int p = pos[id];
+		if(p < 0)
+			return;
+		pos[id] = -1;
+		size--;
+		if(p < size) {
+			heap[p] = heap[size];
+			pos[heap[p]] = p;
+			up(p);
+			down(p);
+		}
+	}
+
+	private boolean before(int a, int b) {
+		return gain[a] > gain[b] || (gain[a] == gain[b] && a < b);
+	}
+
+	private void up(int p) {
+		int id = heap[p];
+		while(p > 0) {
+			int parent = (p - 1) >>> 1;
+			if(!before(id, heap[parent]))
+				break;
+			heap[p] = heap[parent];
+			pos[heap[p]] = p;
+			p = parent;
+		}
+		heap[p] = id;
+		pos[id] = p;
+	}
+
+	private void down(int p) {
+		int id = heap[p];
+		while(true) {
+			int child = 2 * p + 1;
+			if(child >= size)
+				break;
+			if(child + 1 < size && before(heap[child + 1], heap[child]))
+				child++;
+			if(!before(heap[child], id))
+				break;
+			heap[p] = heap[child];
+			pos[heap[p]] = p;
+			p = child;
+		}
+		heap[p] = id;
+		pos[id] = p;
+	}
+}
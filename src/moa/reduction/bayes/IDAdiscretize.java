@@ -28,11 +28,15 @@ import java.util.LinkedList;
 import java.util.Queue;
 import java.util.Random;
 
+import moa.reduction.core.CheckpointBuffer;
+import moa.reduction.core.Checkpointable;
+import moa.reduction.core.ColumnarBatch;
 import moa.reduction.core.MOADiscretize;
+import moa.reduction.core.MemoryEstimate;
 
 import com.yahoo.labs.samoa.instances.Instance;
 
-public class IDAdiscretize extends MOADiscretize {
+public class IDAdiscretize extends MOADiscretize implements Checkpointable {
 	private static final long serialVersionUID = 1L;
 	
 	// number of bins for each numerical attributes
@@ -47,10 +51,18 @@ public class IDAdiscretize extends MOADiscretize {
 	protected int nbNumericalAttributes;
 	// sample reservoir, one for each numerical attribute
 	protected IntervalHeap[] sReservoirs;
+	// index of the reservoir for each attribute (-1 if not numerical)
+	protected int[] reservoirIndex;
 	
 
 	private LinkedList<Float> labels = new LinkedList<Float>();
 	
+	// random source owned by this filter (Math.random() is shared by the whole JVM)
+	protected Random random = new Random();
+	// random source of each reservoir (seeded from random), so the values drawn for an
+	// attribute do not depend on the order in which attributes or batches are processed
+	protected Random[] sRandoms;
+	
 	// type of IDA
 	protected IDAType type;
 	public enum IDAType {
@@ -83,20 +95,21 @@ public class IDAdiscretize extends MOADiscretize {
 	}
 	
 	@Override
-	public Instance applyDiscretization(Instance inst) {
-		  
-		  if(init && nbSeenInstances > nBins){
-			  int rind = 0;
-			  for (int i = 0; i < this.nbAttributes; i++) {
-					 // if numeric and not missing, discretize
-					 if(inst.attribute(i).isNumeric() && !inst.isMissing(i)) {
-						 m_CutPoints[i] = sReservoirs[rind++].getBoundaries();
-					 }
-				 }
-			  return convertInstance(inst);
-		  }		  
-		  return inst;
-	  }
+	protected boolean isSchemeReady() {
+		return init && nbSeenInstances > nBins;
+	}
+	
+	/**
+	 * Take the boundaries of each reservoir as cut points.
+	 */
+	@Override
+	protected void refreshCutPoints() {
+		for (int i = 0; i < this.nbAttributes; i++) {
+			if(reservoirIndex[i] >= 0) {
+				setCutPoints(i, sReservoirs[reservoirIndex[i]].getBoundaries());
+			}
+		}
+	}
 	
 	@Override
 	public void updateEvaluator(Instance inst) {
@@ -115,28 +128,62 @@ public class IDAdiscretize extends MOADiscretize {
 			 writeCPointsToFile(1, 2, nbSeenInstances, "IDA");*/
 	}
 	
+	/**
+	 * Update the reservoirs attribute by attribute over the batch.
+	 * @param batch the new instances
+	 */
+	@Override
+	public void updateEvaluator(ColumnarBatch batch) {
+		Instance model = batch.instance(0);
+		if(!init)
+			init(model);
+		final int first = nbSeenInstances;
+		forEachAttribute(this.nbAttributes, i -> {
+			if(reservoirIndex[i] < 0)
+				return;
+			IntervalHeap reservoir = sReservoirs[reservoirIndex[i]];
+			double[] column = batch.column(i);
+			for (int r = 0; r < column.length; r++) {
+				double v = column[r];
+				// if the value is not missing, then add it to the pool
+				if(Double.isNaN(v))
+					continue;
+				if(type.equals(IDAType.IDA)) { // random sample
+					sampleValue(reservoirIndex[i], v, first + r + 1);
+				} else if(type.equals(IDAType.IDAW)) { // window sample
+					reservoir.insertWithWindow(v);
+				}
+			}
+		});
+		if(type.equals(IDAType.IDAW)) {
+			for (double label : batch.classValues()) {
+				if(labels.size() >= sampleSize)
+					labels.poll();
+				labels.add((float) label);
+			}
+		}
+		nbSeenInstances = first + batch.size();
+	}
+	
 	/**
 	 * Window sample (IDAW)
 	 * @param inst the new instance
 	 */
 	protected void updateWindowSample(Instance inst) {
-		int nbNumericalAttributesCount = 0;
-		for (int i = 0; i < this.nbAttributes; i++) {
-			double v = inst.value(i);
+		forEachAttribute(this.nbAttributes, i -> {
 			// if the value is not missing, then add it to the pool
-			if(inst.attribute(i).isNumeric() && !inst.isMissing(i)) {
-				this.sReservoirs[nbNumericalAttributesCount].insertWithWindow(v);
-				if(!this.sReservoirs[nbNumericalAttributesCount].checkValueInQueues(v)) {
+			if(reservoirIndex[i] >= 0 && !inst.isMissing(i)) {
+				double v = inst.value(i);
+				IntervalHeap reservoir = sReservoirs[reservoirIndex[i]];
+				reservoir.insertWithWindow(v);
+				if(!reservoir.checkValueInQueues(v)) {
 					System.err.println("Value not added.");
 				}
-				if(labels.size() >= sampleSize)
-					labels.poll();
-				labels.add((float) inst.classValue());
 			}
-			if(inst.attribute(i).isNumeric()) { 
-				nbNumericalAttributesCount++;
-			}
-		}
+		});
+		if(labels.size() >= sampleSize)
+			labels.poll();
+		labels.add((float) inst.classValue());
 	}
 	
 	/**
@@ -144,23 +191,31 @@ public class IDAdiscretize extends MOADiscretize {
 	 * @param inst the new instance
 	 */
 	protected void updateRandomSample(Instance inst) {
-		int nbNumericalAttributesCount = 0;
-		for (int i = 0; i < this.nbAttributes; i++) {
-			double v = inst.value(i);
+		final int count = nbSeenInstances;
+		forEachAttribute(this.nbAttributes, i -> {
 			// if the value is not missing, then add it to the pool
-			if(inst.attribute(i).isNumeric() && !inst.isMissing(i)) {
-				if(sReservoirs[nbNumericalAttributesCount].getNbSamples() < sampleSize) {
-					this.sReservoirs[nbNumericalAttributesCount].insertValue(v);
-				} else {
-					double rValue = Math.random();
-					if(rValue <= (double)sampleSize/(double)nbSeenInstances) {
-						int randval = new Random().nextInt(sampleSize);
-						this.sReservoirs[nbNumericalAttributesCount].replace(randval,v);
-					}
-				}
+			if(reservoirIndex[i] >= 0 && !inst.isMissing(i)) {
+				sampleValue(reservoirIndex[i], inst.value(i), count);
 			}
-			if(inst.attribute(i).isNumeric()) { 
-				nbNumericalAttributesCount++;
+		});
+	}
+	
+	/**
+	 * Reservoir sampling of a new value.
+	 * @param index Index of the reservoir
+	 * @param v New value
+	 * @param count Number of instances seen so far (including this one)
+	 */
+	protected void sampleValue(int index, double v, int count) {
+		IntervalHeap reservoir = sReservoirs[index];
+		if(reservoir.getNbSamples() < sampleSize) {
+			reservoir.insertValue(v);
+		} else {
+			Random rnd = sRandoms[index];
+			double rValue = rnd.nextDouble();
+			if(rValue <= (double)sampleSize/(double)count) {
+				int randval = rnd.nextInt(sampleSize);
+				reservoir.replace(randval,v);
 			}
 		}
 	}
@@ -173,18 +228,20 @@ public class IDAdiscretize extends MOADiscretize {
 		//generateNewHeader();
 		//this.nbAttributes = inst.numAttributes() - 1;
 		this.nbAttributes = inst.numAttributes();
-		m_DiscretizeCols.setUpper(nbAttributes);	  
+		updateRangeUpper(nbAttributes);	  
 		m_CutPoints = new double[inst.numAttributes()][this.nBins];
+		schemeChanged();
 		// minus one for the class
 		//this.nbAttributes = inst.numAttributes() - 1;
+		reservoirIndex = new int[this.nbAttributes];
 		for (int i = 0; i < this.nbAttributes; i++) {
-			// if the value is not missing, then add it to the pool
-			if(inst.attribute(i).isNumeric() && !inst.isMissing(i)) 
-				nbNumericalAttributes++;
+			reservoirIndex[i] = inst.attribute(i).isNumeric() ? nbNumericalAttributes++ : -1;
 		}
 		this.sReservoirs =  new IntervalHeap[nbNumericalAttributes];
+		this.sRandoms = new Random[nbNumericalAttributes];
 		for (int i = 0; i < nbNumericalAttributes; i++) {
 			sReservoirs[i] = new IntervalHeap(this.nBins, this.sampleSize, i);
+			sRandoms[i] = new Random(random.nextLong());
 		}
 	}
 
@@ -207,4 +264,74 @@ public class IDAdiscretize extends MOADiscretize {
 		// TODO Auto-generated method stub
 		return null;
 	}
+
+	/**
+	 * One reservoir (sample of values split into bins) per numeric attribute.
+	 */
+	@Override
+	public long estimateByteSize() {
+		long size = super.estimateByteSize() + MemoryEstimate.sizeOf(reservoirIndex)
+				+ MemoryEstimate.linkedList(labels.size()) + labels.size() * MemoryEstimate.BOXED_FLOAT;
+		if(sReservoirs != null) {
+			size += 2 * MemoryEstimate.array(sReservoirs.length, MemoryEstimate.REFERENCE)
+					// each Random holds its seed in an AtomicLong
+					+ sReservoirs.length * (MemoryEstimate.align(MemoryEstimate.OBJECT_HEADER + MemoryEstimate.REFERENCE + 9)
+					+ MemoryEstimate.align(MemoryEstimate.OBJECT_HEADER + 8));
+			for (IntervalHeap reservoir : sReservoirs) {
+				if(reservoir != null)
+					size += reservoir.estimateByteSize();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Parameters, reservoirs, window of labels and state of the random generators.
+	 */
+	@Override
+	public void writeState(CheckpointBuffer out) {
+		writeScheme(out);
+		out.putInt(nBins);
+		out.putInt(sampleSize);
+		out.putInt(nbSeenInstances);
+		out.putInt(nbAttributes);
+		out.putInt(nbNumericalAttributes);
+		out.putInt(type.ordinal());
+		out.putBoolean(init);
+		out.putInts(reservoirIndex);
+		float[] l = new float[labels.size()];
+		int j = 0;
+		for (float label : labels)
+			l[j++] = label;
+		out.putFloats(l);
+		out.putObject(random);
+		out.putObject(sRandoms);
+		out.putInt(sReservoirs == null ? -1 : sReservoirs.length);
+		if(sReservoirs != null) {
+			for (IntervalHeap reservoir : sReservoirs)
+				reservoir.writeState(out);
+		}
+	}
+
+	@Override
+	public void readState(CheckpointBuffer in) {
+		readScheme(in);
+		nBins = in.getInt();
+		sampleSize = in.getInt();
+		nbSeenInstances = in.getInt();
+		nbAttributes = in.getInt();
+		nbNumericalAttributes = in.getInt();
+		type = IDAType.values()[in.getInt()];
+		init = in.getBoolean();
+		reservoirIndex = in.getInts();
+		labels = new LinkedList<Float>();
+		for (float label : in.getFloats())
+			labels.add(label);
+		random = (Random) in.getObject();
+		sRandoms = (Random[]) in.getObject();
+		int length = in.getInt();
+		sReservoirs = length < 0 ? null : new IntervalHeap[length];
+		for (int i = 0; i < length; i++)
+			sReservoirs[i] = new IntervalHeap(in);
+	}
 }
@@ -13,7 +13,9 @@ import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
+import moa.reduction.core.ColumnarBatch;
 import moa.reduction.core.MOADiscretize;
+import moa.reduction.core.MemoryEstimate;
 import weka.core.Range;
 
 import com.yahoo.labs.samoa.instances.Instance;
@@ -88,37 +90,19 @@ public class IFFDdiscretize extends MOADiscretize {
     public void updateEvaluator(Instance instance) {
     	
     	if(m_AttributeClassPairs == null) {
-    		m_DiscretizeCols.setUpper(instance.numAttributes() - 1);
-    		//setAttributeIndices("first-last");
-    		m_IntervalFrequency = new int [instance.numAttributes()] [];
-            m_leftDistribution= new int [instance.numAttributes()] [];
-            m_rightDistribution = new int [instance.numAttributes()] [];
-            m_CutPoints = new double [instance.numAttributes()] []; 
-            m_AttributeClassPairs= new ArrayList<SortedMap<Double, List<Integer>>> (instance.numAttributes());
-            
-            for(int i = instance.numAttributes() - 1; i >= 0; i--) {
-                if ((m_DiscretizeCols.isInRange(i)) &&
-                        (instance.attribute(i).isNumeric()) &&
-                        (instance.classIndex() != i)) {
-                    TreeMap<Double, List<Integer>> map = new TreeMap<Double, List<Integer>>();
-                    m_AttributeClassPairs.add(map);
-                    m_IntervalFrequency[i] = new int[1];
-                }
-            }
+    		initialize(instance);
     	}
     	
         classes.add((int) instance.classValue());
         
         int numAttributes=instance.numAttributes();
-        for(int i = numAttributes - 1; i >= 0; i--) {
+        forEachAttribute(numAttributes, i -> {
             if ((m_DiscretizeCols.isInRange(i)) &&
                     (instance.attribute(i).isNumeric()) &&
                     (instance.classIndex() != i)) {
-                List<Integer> l = m_AttributeClassPairs.get(i).getOrDefault(instance.value(i), new ArrayList<Integer>());
-                l.add((int) instance.classValue());
-                m_AttributeClassPairs.get(i).put(instance.value(i), l);
+                addPair(i, instance.value(i), (int) instance.classValue());
             }
-        }
+        });
         
         if (m_CutPoints != null || m_IntervalFrequency!=null) {
             updateCutpoints(instance);
@@ -126,16 +110,93 @@ public class IFFDdiscretize extends MOADiscretize {
     }
     
     /**
-     * Apply to the instance the discretization scheme derived from previous updates.
-     *  
-     * @param instance instance to discretize
+     * Update the discretization scheme with a batch of instances, attribute by attribute.
+     * Attributes are independent, so the resulting scheme is the same as row by row.
+     * 
+     * @param batch the instances in columnar form
      */
-    public Instance applyDiscretization(Instance inst) {
-    	if(m_CutPoints != null)
-    		return convertInstance(inst);
-    	return inst;
+    @Override
+    public void updateEvaluator(ColumnarBatch batch) {
+    	Instance model = batch.instance(0);
+    	if(m_AttributeClassPairs == null) {
+    		initialize(model);
+    	}
+    	
+    	// Largest class seen up to each row, as the row-by-row path would see it
+    	double[] classValues = batch.classValues();
+    	int[] maxClass = new int[classValues.length];
+    	int max = maxClass();
+    	for (int r = 0; r < classValues.length; r++) {
+    		max = Math.max(max, (int) classValues[r]);
+    		maxClass[r] = max;
+		}
+    	
+        forEachAttribute(batch.numAttributes(), i -> {
+            if ((m_DiscretizeCols.isInRange(i)) &&
+                    (model.attribute(i).isNumeric()) &&
+                    (batch.classIndex() != i)) {
+            	double[] column = batch.column(i);
+            	for (int r = 0; r < column.length; r++) {
+            		addPair(i, column[r], (int) classValues[r]);
+            		updateCutpoint(i, column[r], maxClass[r]);
+				}
+            }
+        });
+        
+    	for (int r = 0; r < classValues.length; r++) {
+    		classes.add((int) classValues[r]);
+		}
     }
-
+    
+    /**
+     * @return the largest class index seen so far.
+     */
+    protected int maxClass() {
+        int max = Integer.MIN_VALUE;
+        for (int d : classes) {
+           if (d > max) max = d;
+        }
+        return max;
+    }
+    
+    /**
+     * Initialize the structures using the header of the first instance.
+     * 
+     * @param instance the first instance
+     */
+    protected void initialize(Instance instance) {
+        m_DiscretizeCols.setUpper(instance.numAttributes() - 1);
+        //setAttributeIndices("first-last");
+        m_IntervalFrequency = new int [instance.numAttributes()] [];
+        m_leftDistribution= new int [instance.numAttributes()] [];
+        m_rightDistribution = new int [instance.numAttributes()] [];
+        m_CutPoints = new double [instance.numAttributes()] []; 
+        schemeChanged();
+        m_AttributeClassPairs= new ArrayList<SortedMap<Double, List<Integer>>> (instance.numAttributes());
+        
+        for(int i = instance.numAttributes() - 1; i >= 0; i--) {
+            if ((m_DiscretizeCols.isInRange(i)) &&
+                    (instance.attribute(i).isNumeric()) &&
+                    (instance.classIndex() != i)) {
+                TreeMap<Double, List<Integer>> map = new TreeMap<Double, List<Integer>>();
+                m_AttributeClassPairs.add(map);
+                m_IntervalFrequency[i] = new int[1];
+            }
+        }
+        m_ChangedAttributes = new int [m_AttributeClassPairs.size()];
+        for(int i = 0; i < m_ChangedAttributes.length; i++)
+            m_ChangedAttributes[i] = -1;
+    }
+    
+    /**
+     * Store a new value-class pair for an attribute.
+     */
+    protected void addPair(int index, double value, int classValue) {
+        List<Integer> l = m_AttributeClassPairs.get(index).getOrDefault(value, new ArrayList<Integer>());
+        l.add(classValue);
+        m_AttributeClassPairs.get(index).put(value, l);
+    }
+    
     /**
      * Update the discretization scheme using the new instance. 
      * It makes several calls to the splitInterval function.
@@ -155,57 +216,55 @@ public class IFFDdiscretize extends MOADiscretize {
         }
          */
         /* PD setting end*/
-        int index=0;
+        final int maxClass = maxClass();
+        forEachAttribute(instance.numAttributes(), index -> {
+            if (m_DiscretizeCols.isInRange(index) &&
+                    instance.attribute(index).isNumeric() &&
+                    (instance.classIndex() != index)){
+                updateCutpoint(index, instance.value(index), maxClass);
+            }
+        });
         
+    }
+    
+    /**
+     * Update the intervals of a single attribute with a new value.
+     * 
+     * @param index Attribute index
+     * @param currentVal New value (NaN if missing)
+     * @param maxClass Largest class index seen so far
+     */
+    protected void updateCutpoint(int index, double currentVal, int maxClass) {
         //long minBinSize = Math.round(m_BinSize * m_MinPercentSize);
         long maxBinSize;
         //long maxBinSize = Math.round(m_BinSize + (m_BinSize * m_MaxPercentSize));
         maxBinSize=m_MaxBinSize;
         
-        //Instances data = new Instances(getInputFormat());
-        //data.sort(index);      
-        for(index=0;index<instance.numAttributes();index++) {
-            if (m_DiscretizeCols.isInRange(index) &&
-                    instance.attribute(index).isNumeric() &&
-                    (instance.classIndex() != index)){
-                int j;
-                double currentVal = instance.value(index);
-                if (m_CutPoints[index] == null) {
-                    if (instance.isMissing(index)) {
-                        //vals[index] = Instance.missingValue();
-                    } else {
-                        /*
-                        if(m_IntervalFrequency[index][0]>=maxBinSize) {
-                            splitInterval(index, 0);
-                        } else {
-                            vals[index] = 0;
-                            m_IntervalFrequency[index][0]++;
-                        }*/
-                        splitInterval(index, 0);
-                    }
-                    
-                } else {
-                    if(!m_MakeBinary) {
-                        
-                        if (instance.isMissing(index)) {
-                            //vals[index] = Instance.missingValue();
-                        } else {
-                            for ( j = 0; j < m_CutPoints[index].length; j++) {
-                                if (currentVal <= m_CutPoints[index][j]) {
-                                    break;
-                                }
-                            }
-                            if(m_IntervalFrequency[index][j]<maxBinSize)
-                                m_IntervalFrequency[index][j]++;
-                            else
-                                splitInterval(index, j);
-                        }
-                        
-                    }
+        if (Double.isNaN(currentVal)) {
+            //vals[index] = Instance.missingValue();
+            return;
+        }
+        int j;
+        if (m_CutPoints[index] == null) {
+            /*
+            if(m_IntervalFrequency[index][0]>=maxBinSize) {
+                splitInterval(index, 0);
+            } else {
+                vals[index] = 0;
+                m_IntervalFrequency[index][0]++;
+            }*/
+            splitInterval(index, 0, maxClass);
+        } else if(!m_MakeBinary) {
+            for ( j = 0; j < m_CutPoints[index].length; j++) {
+                if (currentVal <= m_CutPoints[index][j]) {
+                    break;
                 }
             }
+            if(m_IntervalFrequency[index][j]<maxBinSize)
+                m_IntervalFrequency[index][j]++;
+            else
+                splitInterval(index, j, maxClass);
         }
-        
     }
     
     /**
@@ -214,13 +273,13 @@ public class IFFDdiscretize extends MOADiscretize {
      * 
      * @param index Attribute index
      * @param splitinterval Interval index in the class attribute pairs.
+     * @param max Largest class index seen so far
      */
-    protected void splitInterval(int index,int splitinterval) {
+    protected void splitInterval(int index,int splitinterval,int max) {
         double newcutpoint=0;
         int i,j;
         int start=0,end;
         //int numInstances=m_AttributeClassPairs.get(index).size();
-        int numAttribute=m_AttributeClassPairs.size();
         for(i=0;i<splitinterval;i++){
             start += m_IntervalFrequency[index][i];
         }
@@ -252,12 +311,6 @@ public class IFFDdiscretize extends MOADiscretize {
         int numOfInstances = 0;
         
         
-        int max = Integer.MIN_VALUE;
-
-        for (int d : classes) {
-           if (d > max) max = d;
-        }
-
         int [] classInstance=new int[max + 1];
         
         for( i = start; i < end; i++) {
@@ -412,6 +465,7 @@ public class IFFDdiscretize extends MOADiscretize {
             
             m_CutPoints[index]=cutpoints;
             m_IntervalFrequency[index]=intervalfrequency;
+            schemeChanged();
         } else{
             m_CutPoints[index]=new double [1];
             m_CutPoints[index][0]=newcutpoint;
@@ -419,13 +473,9 @@ public class IFFDdiscretize extends MOADiscretize {
             m_IntervalFrequency[index]=new int [2];
             m_IntervalFrequency[index][0]=leftIntervalFrequency;
             m_IntervalFrequency[index][1]=end-start-leftIntervalFrequency;
+            schemeChanged();
         }
         
-        if (m_ChangedAttributes==null){
-            m_ChangedAttributes=new int [numAttribute];
-            for(i=0;i<numAttribute;i++)
-                m_ChangedAttributes[i]=-1;
-        }
         m_ChangedAttributes[index]=splitinterval;
         //updateOutputFormat(index);
         
@@ -450,4 +500,27 @@ public class IFFDdiscretize extends MOADiscretize {
 		// TODO Auto-generated method stub
 		return null;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Includes all the distinct values seen per attribute (with the list of classes
+	 * of each), which grows with the stream.
+	 */
+	@Override
+	public long estimateByteSize() {
+		long size = super.estimateByteSize();
+		size += MemoryEstimate.treeMap(classes.size()) + classes.size() * MemoryEstimate.BOXED_INTEGER;
+		size += MemoryEstimate.sizeOf(m_ChangedAttributes) + MemoryEstimate.sizeOf(m_IntervalFrequency)
+				+ MemoryEstimate.sizeOf(m_leftDistribution) + MemoryEstimate.sizeOf(m_rightDistribution);
+		if(m_AttributeClassPairs != null) {
+			size += MemoryEstimate.arrayList(m_AttributeClassPairs.size());
+			for (SortedMap<Double, List<Integer>> pairs : m_AttributeClassPairs) {
+				size += MemoryEstimate.treeMap(pairs.size()) + pairs.size() * MemoryEstimate.BOXED_DOUBLE;
+				for (List<Integer> l : pairs.values()) {
+					// Lists start with the default capacity, class labels are cached Integers
+					size += MemoryEstimate.arrayList(Math.max(10, l.size()));
+				}
+			}
+		}
+		return size;
+	}
+}
@@ -29,7 +29,11 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import moa.reduction.core.CheckpointBuffer;
+import moa.reduction.core.Checkpointable;
+import moa.reduction.core.ColumnarBatch;
 import moa.reduction.core.MOAAttributeEvaluator;
+import moa.reduction.core.MemoryEstimate;
 import weka.attributeSelection.ASEvaluation;
 import weka.attributeSelection.AttributeEvaluator;
 import weka.core.Attribute;
@@ -74,7 +78,7 @@ import com.yahoo.labs.samoa.instances.Instance;
  * @see NumericToBinary
  */
 public class IncrInfoThAttributeEval extends ASEvaluation implements
-  AttributeEvaluator, MOAAttributeEvaluator {
+  AttributeEvaluator, MOAAttributeEvaluator, Checkpointable {
 
   /** for serialization */
   static final long serialVersionUID = -1949849512589218930L;
@@ -229,20 +233,7 @@ public class IncrInfoThAttributeEval extends ASEvaluation implements
   public void updateEvaluator(Instance inst) throws Exception {
 	  
   	if(counts == null) {
-	    // can evaluator handle data?
-		weka.core.Instance winst = new weka.core.DenseInstance(inst.weight(), inst.toDoubleArray());
-		ArrayList<Attribute> list = new ArrayList<Attribute>();
-	  	//ArrayList<Attribute> list = Collections.list(winst.enumerateAttributes());
-	  	//list.add(winst.classAttribute());
-		for(int i = 0; i < inst.numAttributes(); i++) 
-			list.add(new Attribute(inst.attribute(i).name(), i));
-	  	weka.core.Instances data = new weka.core.Instances("single", list, 1);
-	  	data.setClassIndex(inst.classIndex());
-	  	data.add(winst);
-	    //getCapabilities().testWithFail(data);
-	    classIndex = inst.classIndex();
-	    counts = (HashMap<Key, Float>[]) new HashMap[inst.numAttributes()];
-	    for(int i = 0; i < counts.length; i++) counts[i] = new HashMap<Key, Float>();
+  		initCounts(inst);
   	}
       for (int i = 0; i < inst.numValues(); i++) {
         if (inst.index(i) != classIndex) {
@@ -255,6 +246,52 @@ public class IncrInfoThAttributeEval extends ASEvaluation implements
       updated = true;
   }
   
+  /**
+   * Update the counters attribute by attribute over a batch. Sparse batches 
+   * are processed row by row, as only stored values are counted for them.
+   */
+  @Override
+  public void updateEvaluator(ColumnarBatch batch) throws Exception {
+	  if(batch.isSparse()) {
+		  MOAAttributeEvaluator.super.updateEvaluator(batch);
+		  return;
+	  }
+	  if(counts == null) {
+		  initCounts(batch.instance(0));
+	  }
+	  double[] classes = batch.classValues();
+	  double[] weights = batch.weights();
+	  for (int i = 0; i < batch.numAttributes(); i++) {
+		  if (i != classIndex) {
+			  double[] column = batch.column(i);
+			  HashMap<Key, Float> attCounts = counts[i];
+			  for (int r = 0; r < column.length; r++) {
+				  Key key = new Key((float) column[r], (float) classes[r]);
+				  Float cval = (float) (attCounts.getOrDefault(key, 0.0f) + weights[r]);
+				  attCounts.put(key, cval);
+			  }
+		  }
+	  }
+	  updated = true;
+  }
+  
+  private void initCounts(Instance inst) {
+    // can evaluator handle data?
+	weka.core.Instance winst = new weka.core.DenseInstance(inst.weight(), inst.toDoubleArray());
+	ArrayList<Attribute> list = new ArrayList<Attribute>();
+  	//ArrayList<Attribute> list = Collections.list(winst.enumerateAttributes());
+  	//list.add(winst.classAttribute());
+	for(int i = 0; i < inst.numAttributes(); i++) 
+		list.add(new Attribute(inst.attribute(i).name(), i));
+  	weka.core.Instances data = new weka.core.Instances("single", list, 1);
+  	data.setClassIndex(inst.classIndex());
+  	data.add(winst);
+    //getCapabilities().testWithFail(data);
+    classIndex = inst.classIndex();
+    counts = newCounts(inst.numAttributes());
+    for(int i = 0; i < counts.length; i++) counts[i] = new HashMap<Key, Float>();
+  }
+  
   @Override
   /**
    * Update the contingency tables and the rankings for each features using the counters.
@@ -362,6 +399,80 @@ public class IncrInfoThAttributeEval extends ASEvaluation implements
     return text.toString();
   }
 
+  /**
+   * One counter per distinct pair (value, class) and attribute.
+   */
+  @Override
+  public long estimateByteSize() {
+	long size = MemoryEstimate.sizeOf(m_InfoValues);
+	if(counts != null) {
+		// Key: two floats and outer reference
+		long entry = MemoryEstimate.align(MemoryEstimate.OBJECT_HEADER + 2 * 4 + MemoryEstimate.REFERENCE) 
+				+ MemoryEstimate.BOXED_FLOAT;
+		size += MemoryEstimate.array(counts.length, MemoryEstimate.REFERENCE);
+		for (HashMap<Key, Float> c : counts) {
+			if(c != null)
+				size += MemoryEstimate.hashMap(c.size()) + c.size() * entry;
+		}
+	}
+	return size;
+  }
+
+  /**
+   * Counters of each pair (value, class) per attribute, in the iteration order of their maps.
+   */
+  @Override
+  public void writeState(CheckpointBuffer out) {
+	out.putInt(method);
+	out.putInt(classIndex);
+	out.putBoolean(updated);
+	out.putBoolean(m_missing_merge);
+	out.putBoolean(m_Binarize);
+	out.putDoubles(m_InfoValues);
+	if(counts == null) {
+		out.putInt(-1);
+		return;
+	}
+	out.putInt(counts.length);
+	for (HashMap<Key, Float> c : counts) {
+		out.putInt(c.size());
+		for (Entry<Key, Float> e : c.entrySet()) {
+			out.putFloat(e.getKey().x);
+			out.putFloat(e.getKey().y);
+			out.putFloat(e.getValue());
+		}
+	}
+  }
+
+  @SuppressWarnings("unchecked")
+  private HashMap<Key, Float>[] newCounts(int numAttributes) {
+	return (HashMap<Key, Float>[]) new HashMap<?, ?>[numAttributes];
+  }
+
+  @Override
+  public void readState(CheckpointBuffer in) {
+	method = in.getInt();
+	classIndex = in.getInt();
+	updated = in.getBoolean();
+	m_missing_merge = in.getBoolean();
+	m_Binarize = in.getBoolean();
+	m_InfoValues = in.getDoubles();
+	int length = in.getInt();
+	if(length < 0) {
+		counts = null;
+		return;
+	}
+	counts = newCounts(length);
+	for (int i = 0; i < length; i++) {
+		int size = in.getInt();
+		counts[i] = new HashMap<Key, Float>();
+		for (int j = 0; j < size; j++) {
+			float x = in.getFloat(), y = in.getFloat();
+			counts[i].put(new Key(x, y), in.getFloat());
+		}
+	}
+  }
+
   /**
    * Returns the revision string.
    * 
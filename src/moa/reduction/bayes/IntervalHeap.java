@@ -26,6 +26,9 @@ import java.util.LinkedList;
 
 import com.google.common.collect.MinMaxPriorityQueue;
 
+import moa.reduction.core.CheckpointBuffer;
+import moa.reduction.core.MemoryEstimate;
+
 public class IntervalHeap {
 
 	// index of this attribute
@@ -44,13 +47,61 @@ public class IntervalHeap {
 	public IntervalHeap(int nBins, int sampleSize, int attIndex) {
 		this.nBins = nBins;
 		this.sampleSize = sampleSize;
-		values = new MinMaxPriorityQueue[nBins];
+		values = newQueues(nBins);
 		for (int i = 0; i < nBins; i++) {
 			values[i] = MinMaxPriorityQueue.create();
 		}
 		this.attIndex = attIndex;
 	}
 
+	@SuppressWarnings("unchecked")
+	private static MinMaxPriorityQueue<Double>[] newQueues(int nBins) {
+		return (MinMaxPriorityQueue<Double>[]) new MinMaxPriorityQueue<?>[nBins];
+	}
+
+	/**
+	 * Restore a heap written by {@link #writeState(CheckpointBuffer)}.
+	 * @param in the checkpoint buffer
+	 */
+	public IntervalHeap(CheckpointBuffer in) {
+		this.attIndex = in.getInt();
+		this.nBins = in.getInt();
+		this.nbSamples = in.getInt();
+		this.sampleSize = in.getInt();
+		values = newQueues(nBins);
+		for (int i = 0; i < nBins; i++) {
+			values[i] = MinMaxPriorityQueue.create();
+			// Added in the internal order, the layout of the heap is the same
+			for (double v : in.getDoubles())
+				values[i].add(v);
+		}
+		for (double v : in.getDoubles())
+			windowValues.add(v);
+	}
+
+	/**
+	 * Write the bins (in the internal order of the queues, which is used by replace) and the window.
+	 * @param out the checkpoint buffer
+	 */
+	public void writeState(CheckpointBuffer out) {
+		out.putInt(attIndex);
+		out.putInt(nBins);
+		out.putInt(nbSamples);
+		out.putInt(sampleSize);
+		for (MinMaxPriorityQueue<Double> q : values) {
+			double[] bin = new double[q.size()];
+			int j = 0;
+			for (double v : q)
+				bin[j++] = v;
+			out.putDoubles(bin);
+		}
+		double[] window = new double[windowValues.size()];
+		int j = 0;
+		for (double v : windowValues)
+			window[j++] = v;
+		out.putDoubles(window);
+	}
+
 	public int getNbSamples() {
 		return nbSamples;
 	}
@@ -283,4 +334,18 @@ public class IntervalHeap {
 			}
 		}
 	}
+
+	/**
+	 * Estimate the memory used by the bins and the window (boxed values).
+	 * @return estimated size in bytes
+	 */
+	public long estimateByteSize() {
+		long size = MemoryEstimate.array(values.length, MemoryEstimate.REFERENCE);
+		for (MinMaxPriorityQueue<Double> q : values) {
+			// Queues start with 11 slots and grow as array lists
+			size += MemoryEstimate.arrayList(Math.max(11, q.size())) + q.size() * MemoryEstimate.BOXED_DOUBLE;
+		}
+		size += MemoryEstimate.linkedList(windowValues.size()) + windowValues.size() * MemoryEstimate.BOXED_DOUBLE;
+		return size;
+	}
 }
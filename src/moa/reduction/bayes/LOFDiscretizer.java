@@ -5,18 +5,17 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Queue;
-import java.util.TreeMap;
 
 import weka.core.Utils;
+import moa.reduction.core.CheckpointBuffer;
+import moa.reduction.core.Checkpointable;
+import moa.reduction.core.ColumnarBatch;
 import moa.reduction.core.MOADiscretize;
+import moa.reduction.core.MemoryEstimate;
 
 import com.yahoo.labs.samoa.instances.Instance;
 
@@ -30,24 +29,35 @@ import com.yahoo.labs.samoa.instances.Instance;
  * @author Sergio Ramírez (sramirez at decsai dot ugr dot es)
  */
 
-public class LOFDiscretizer extends MOADiscretize {
+public class LOFDiscretizer extends MOADiscretize implements Checkpointable {
 	
 	/**
 	 * 
 	 */
 	private static final long serialVersionUID = 1L;
 	private int totalCount, numClasses, numAttributes;
-	TreeMap<Float, Interval>[] allIntervals;
+	// Intervals of each attribute indexed by their end
+	SortedFloatMap<Interval>[] allIntervals;
+	// Attributes whose intervals have changed since their cut points were last refreshed
+	private boolean[] dirty;
 	private float lambda, alpha;
 	private int initTh;
 	private int maxHist;
 	private int decimals;
 	// Queue of labels for each attribute
 	private Queue<Integer>[] labelsToUse;
-	private LinkedList<Tuple<Float, Byte>>[] elemQ;
+	// Queue of points (value and class) for each attribute, in arrival order
+	private PointQueue[] elemQ;
 	private int maxLabels;
 	private int[] contLabels;
 	private int[][] classByAtt;
+	// Global memory budget (bytes) for the points kept in queues and histograms (0 = unbounded)
+	private long memoryBudget = 0;
+	// Attribute of each queued point in arrival order (only used with a memory budget)
+	private int[] pointOrder;
+	private int orderHead, orderSize;
+	// Points already removed from each queue by the histogram limit, still present in pointOrder
+	private int[] removedByAtt;
 	
 	
 	/**
@@ -82,32 +92,57 @@ public class LOFDiscretizer extends MOADiscretize {
 	}
 
 	/**
-	 * Apply the discretization scheme to a new incoming instance.
-	 * The discretization scheme must be generated previously.
-	 * @param inst a new instance.
-	 * @return A new instance discretized.
+	 * Set a global memory budget for the points kept by the discretizer (queues and histograms).
+	 * When the points of all the attributes exceed the budget, the oldest ones are evicted first,
+	 * whatever the attribute they belong to. The points used to build the initial scheme (initTh
+	 * instances) are always kept until then. It must be set before the first update.
+	 * @param bytes Budget in bytes (0 = unbounded, only histograms are limited by maxHist).
 	 */
-	public Instance applyDiscretization(Instance inst) {
-		  if(m_Init){
-			  for (int i = 0; i < inst.numAttributes(); i++) {
-				 // if numeric and not missing, discretize
-				 if(inst.attribute(i).isNumeric() && !inst.isMissing(i)) {
-					 double[] boundaries = new double[allIntervals[i].size()];
-					 String[] labels = new String[allIntervals[i].size()];
-					 int j = 0;
-				 	for (Iterator<Interval> iterator = allIntervals[i].values().iterator(); iterator
-				 			.hasNext();) {
-				 		Interval interv = iterator.next();
-				 		labels[j] = Integer.toString(interv.label);
-				 		boundaries[j++] = interv.end;
-				 	}
-				 	m_Labels[i] = labels;
-				 	m_CutPoints[i] = boundaries;
-				 }
-			  }		  
-			  return convertInstance(inst);
-		  }			
-		  return inst;
+	public void setMemoryBudget(long bytes) {
+		this.memoryBudget = bytes;
+	}
+	
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+	
+	/**
+	 * Estimated cost of a point: value and class in its queue, plus its entry in a histogram
+	 * (worst case, all points distinct: key and packed class counts) and its slot in the 
+	 * global order. Intervals are not included since there are much fewer intervals than points.
+	 * @return estimated size in bytes
+	 */
+	private long getPointByteSize() {
+		return 4 + 2 + 4 + 4L * numClasses + 4;
+	}
+
+	@Override
+	protected boolean isSchemeReady() {
+		return m_Init;
+	}
+	
+	/**
+	 * Take the end of the intervals as cut points, and their labels as bin values. Only the
+	 * attributes whose intervals have changed since the last call are rebuilt.
+	 */
+	@Override
+	protected void refreshCutPoints() {
+		for (int i = 0; i < numAttributes; i++) {
+			// only numeric attributes have intervals
+			if(dirty[i] && !allIntervals[i].isEmpty()) {
+				double[] boundaries = new double[allIntervals[i].size()];
+				String[] labels = new String[allIntervals[i].size()];
+				int j = 0;
+				for (; j < boundaries.length; j++) {
+					Interval interv = allIntervals[i].valueAt(j);
+					labels[j] = Integer.toString(interv.label);
+					boundaries[j] = interv.end;
+				}
+				setLabels(i, labels);
+				setCutPoints(i, boundaries);
+			}
+			dirty[i] = false;
+		}
 	}
   
 	/**
@@ -131,11 +166,11 @@ public class LOFDiscretizer extends MOADiscretize {
 	  // If there are enough instances to initialize cut points, do it!
 	  if(totalCount >= initTh){
 		  if(m_Init) {			  
-			  for (int i = 0; i < instance.numAttributes(); i++) {
+			  forEachAttribute(instance.numAttributes(), i -> {
 				 if(instance.attribute(i).isNumeric() && !instance.isMissing(i)) {
-					 insertExample(i, instance); 					 
+					 insertExample(i, getInstanceValue(instance.value(i)), (int) instance.classValue()); 					 
 				 }
-			  }		
+			  });		
 			  addExampleToQueue(instance);
 		  } else {
 			  addExampleToQueue(instance);
@@ -146,6 +181,46 @@ public class LOFDiscretizer extends MOADiscretize {
 	  } else {
 		  addExampleToQueue(instance);
 	  }
+	  enforceMemoryBudget();
+  }
+  
+  /**
+   * Update the discretization scheme with a batch of examples. Once the initial scheme
+   * has been generated, examples are inserted attribute by attribute (attributes do not
+   * share intervals or queues, only the global counter, which is set for each example).
+   * For this reason, this path is always sequential. With a memory budget, examples are
+   * processed row by row instead, since evicting the oldest points of any attribute after
+   * each example changes the intervals of the rest.
+   * @param batch incoming examples in columnar form.
+   */
+  @Override
+  public void updateEvaluator(ColumnarBatch batch) {
+	  int start = 0;
+	  while(start < batch.size() && (!m_Init || pointOrder != null)) {
+		  updateEvaluator(batch.instance(start++));
+	  }
+	  if(start == batch.size())
+		  return;
+	  
+	  Instance model = batch.instance(0);
+	  int first = totalCount;
+	  double[] classes = batch.classValues();
+	  for (int i = 0; i < batch.numAttributes(); i++) {
+		  if(model.attribute(i).isNumeric()) {
+			  double[] column = batch.column(i);
+			  for (int r = start; r < column.length; r++) {
+				  if(!Double.isNaN(column[r])) {
+					  int cls = (int) classes[r];
+					  float val = getInstanceValue(column[r]);
+					  totalCount = first + r - start + 1;
+					  classByAtt[i][cls]++;
+					  insertExample(i, val, cls);
+					  elemQ[i].add(val, cls);
+				  }
+			  }
+		  }
+	  }
+	  totalCount = first + batch.size() - start;
   }
   
   /**
@@ -158,12 +233,75 @@ public class LOFDiscretizer extends MOADiscretize {
 	  for (int i = 0; i < instance.numAttributes(); i++) {
 			 // if numeric and not missing, discretize
 			 if(instance.attribute(i).isNumeric() && !instance.isMissing(i)) {
-				 elemQ[i].add(new Tuple<Float, Byte>(
-						 getInstanceValue(instance.value(i)), (byte)instance.classValue()));
+				 elemQ[i].add(getInstanceValue(instance.value(i)), (int) instance.classValue());
+				 if(pointOrder != null)
+					 addToOrder(i);
 			 }
 	  }
   }
   
+  private void addToOrder(int att) {
+	  if(orderSize == pointOrder.length) {
+		  int[] norder = new int[pointOrder.length * 2];
+		  for (int j = 0; j < orderSize; j++)
+			  norder[j] = pointOrder[(orderHead + j) % pointOrder.length];
+		  pointOrder = norder;
+		  orderHead = 0;
+	  }
+	  pointOrder[(orderHead + orderSize++) % pointOrder.length] = att;
+  }
+  
+  /**
+   * Remove the entries of points already removed by the histogram limit from the global order,
+   * so that the order does not grow when the budget is not reached, and shrink it if needed.
+   */
+  private void compactOrder() {
+	  int n = 0;
+	  for (int j = 0; j < orderSize; j++) {
+		  int att = pointOrder[(orderHead + j) % pointOrder.length];
+		  if(removedByAtt[att] > 0)
+			  removedByAtt[att]--; // the oldest points of each attribute are removed first
+		  else
+			  pointOrder[(orderHead + n++) % pointOrder.length] = att;
+	  }
+	  orderSize = n;
+	  if(pointOrder.length > 1024 && orderSize < pointOrder.length / 4) {
+		  int[] norder = new int[Math.max(1024, orderSize * 2)];
+		  for (int j = 0; j < orderSize; j++)
+			  norder[j] = pointOrder[(orderHead + j) % pointOrder.length];
+		  pointOrder = norder;
+		  orderHead = 0;
+	  }
+  }
+  
+  /**
+   * Evict the oldest points (across all attributes) until the points kept fit in the memory budget.
+   */
+  private void enforceMemoryBudget() {
+	  // The initial scheme is built from the complete (aligned) queues
+	  if(pointOrder == null || !m_Init)
+		  return;
+	  long numPoints = 0;
+	  for (int i = 0; i < numAttributes; i++)
+		  numPoints += elemQ[i].size();
+	  long maxPoints = memoryBudget / getPointByteSize();
+	  while(numPoints > maxPoints && orderSize > 0) {
+		  int att = pointOrder[orderHead];
+		  orderHead = (orderHead + 1) % pointOrder.length;
+		  orderSize--;
+		  if(removedByAtt[att] > 0) {
+			  removedByAtt[att]--;
+			  continue;
+		  }
+		  if(!elemQ[att].isEmpty()) {
+			  removeOldest(att);
+			  numPoints--;
+		  }
+	  }
+	  if(orderSize > 2 * numPoints + 1024 || (pointOrder.length > 1024 && orderSize < pointOrder.length / 4))
+		  compactOrder();
+  }
+  
   /**
    * Remove points from the queue till enough room is left for new points.
    * @param att Attribute index
@@ -172,99 +310,136 @@ public class LOFDiscretizer extends MOADiscretize {
    */
   private void removeOldsUntilSize(int att, Interval interv, int size) {
 	  while(!elemQ[att].isEmpty() && interv.histogram.size() > size) {
-		  Tuple<Float, Byte> tuple = elemQ[att].poll();
-		  if(removePointFromInteravls(att, tuple))
-			  classByAtt[att][tuple.y]--;
+		  removeOldest(att);
+		  if(pointOrder != null)
+			  removedByAtt[att]++;
 	  }
   }
   
+  /**
+   * Remove the oldest point of an attribute from its queue and from the intervals.
+   * @param att Attribute index
+   */
+  private void removeOldest(int att) {
+	  float value = elemQ[att].value(0);
+	  int cls = elemQ[att].classAt(0);
+	  elemQ[att].removeFirst();
+	  if(removePointFromInteravls(att, value, cls))
+		  classByAtt[att][cls]--;
+  }
+  
   /**
    * Remove a point from the set of intervals in an attribute.
    * @param att Attribute index
-   * @param elem Class and value of the point
+   * @param value Value of the point
+   * @param cls Class of the point
    * @return if removal is performed
    */
-  private boolean removePointFromInteravls(int att, Tuple<Float, Byte> elem) {
-	  Map.Entry<Float, Interval> ceilingE = allIntervals[att].ceilingEntry(elem.x);
-	  if(ceilingE != null){
-		  ceilingE.getValue().removePoint(att, elem.x, elem.y);
+  private boolean removePointFromInteravls(int att, float value, int cls) {
+	  int pos = allIntervals[att].ceiling(value);
+	  if(pos >= 0){
+		  float key = allIntervals[att].keyAt(pos);
+		  Interval interval = allIntervals[att].valueAt(pos);
+		  interval.removePoint(att, value, cls);
 		  // If interval is empty, remove it from the list
-		  if(ceilingE.getValue().histogram.isEmpty()) {
-			  allIntervals[att].remove(ceilingE.getKey());
-			  labelsToUse[att].add(ceilingE.getValue().label);
+		  if(interval.histogram.isEmpty()) {
+			  allIntervals[att].removeAt(pos);
+			  labelsToUse[att].add(interval.label);
+			  dirty[att] = true;
+		  } else if(interval.end != key) {
+			  rekeyInterval(att, pos, interval);
 		  }
 		  return true;
 	  }
 	  return false;
   }
   
+  /**
+   * Move an interval whose maximum point has been removed under its new end. Intervals are
+   * indexed by their end, so leaving it under the old key makes later ceiling lookups return
+   * the wrong interval ("Point not found" on removal, NPE in isBoundary).
+   * @param att Attribute index
+   * @param pos Position of the interval (under its old key)
+   * @param interval Interval to move
+   */
+  private void rekeyInterval(int att, int pos, Interval interval) {
+	  allIntervals[att].removeAt(pos);
+	  allIntervals[att].put(interval.end, interval);
+	  dirty[att] = true;
+  }
+  
   /**
    * Insert a new example in the discretization scheme. If it is a boundary point,
    * it is incorporated and a local fusion process is launched using this interval and 
    * the surrounding ones. If not, the point just feed up the intervals.
    * @param att Attribute index
-   * @param instance An incoming example
+   * @param val Rounded value of the example
+   * @param cls Class of the example
    */
-  private void insertExample(int att, Instance instance){
+  private void insertExample(int att, float val, int cls){
 	  
-     int cls = (int) instance.classValue();
-     float val = getInstanceValue(instance.value(att));
 	 // Get the ceiling interval for the given value
-	 Map.Entry<Float, Interval> centralE = allIntervals[att].ceilingEntry(val);
-	 // The point is within the range defined by centralE, if not a new maximum interval is created
+	 int centralPos = allIntervals[att].ceiling(val);
+	 // The point is within the range defined by central, if not a new maximum interval is created
 	 LinkedList<Interval> intervalList = new LinkedList<Interval>();
-	 if(centralE != null) {
-		 Interval central = centralE.getValue();
+	 if(centralPos >= 0) {
+		 float centralKey = allIntervals[att].keyAt(centralPos);
+		 Interval central = allIntervals[att].valueAt(centralPos);
 		 // If it is a boundary point, evaluate six different cutting alternatives
 		 if(isBoundary(att, central, val, cls)){ 
 			  // Add splitting point before dividing the interval
-			  float oldKey = centralE.getKey();
 			  central.addPoint(att, val, cls); // do not remove any interval from allIntervals, all needed
 			  central.updateCriterion();
 			  // This instruction should be between the search of entries and after the addition of the point
-			  allIntervals[att].remove(oldKey);
+			  allIntervals[att].removeAt(centralPos);
 			  // Split the interval
 			  Interval splitI = central.splitInterval(att, val); // Criterion is updated for both intervals
-			  Map.Entry<Float, Interval> lowerE = allIntervals[att].lowerEntry(central.end);
-			  Map.Entry<Float, Interval> higherE = allIntervals[att].higherEntry(splitI.end); // if not use splitI, we will take again central
+			  int lowerPos = allIntervals[att].lower(central.end);
+			  int higherPos = allIntervals[att].higher(splitI.end); // if not use splitI, we will take again central
+			  Interval lower = lowerPos >= 0 ? allIntervals[att].valueAt(lowerPos) : null;
+			  Interval higher = higherPos >= 0 ? allIntervals[att].valueAt(higherPos) : null;
+			  // Remove from the right, so that the position of the lower interval is still valid
+			  if(higher != null)
+				  allIntervals[att].removeAt(higherPos);
+			  if(lower != null)
+				  allIntervals[att].removeAt(lowerPos);
 			  // Insert in the specific order
-			  if(lowerE != null) {
-				 intervalList.add(lowerE.getValue());
-				 allIntervals[att].remove(lowerE.getKey());
-			  }
+			  if(lower != null)
+				 intervalList.add(lower);
 			  intervalList.add(central);
 			  if(splitI != null)
 				  intervalList.add(splitI); 
-			  if(higherE != null) {
-				  intervalList.add(higherE.getValue());
-				  allIntervals[att].remove(higherE.getKey());
-			  }
+			  if(higher != null)
+				  intervalList.add(higher);
 			  evaluateLocalMerges(att, intervalList);
 			  insertIntervals(att, intervalList);
+			  dirty[att] = true;
 		 } else {
 			 // If not, just add the point to the interval
 			 central.addPoint(att, val, cls);
 			 central.updateCriterion();
 			 // Update the key with the bigger end
-			 if(centralE.getKey() != central.end) {
-				 allIntervals[att].remove(centralE.getKey());
+			 if(centralKey != central.end) {
+				 allIntervals[att].removeAt(centralPos);
 				 allIntervals[att].put(central.end, central);
+				 dirty[att] = true;
 			 }
 			 intervalList.add(central);
 		 }
 	 } else {
 		 // New interval with a new maximum limit
-		 Map.Entry<Float, Interval> priorE = allIntervals[att].lowerEntry(val);
+		 int priorPos = allIntervals[att].lower(val);
 		 // Insert in the specific order
-		 if(priorE != null) {
-			 intervalList.add(priorE.getValue());
-			 allIntervals[att].remove(priorE.getKey());
+		 if(priorPos >= 0) {
+			 intervalList.add(allIntervals[att].valueAt(priorPos));
+			 allIntervals[att].removeAt(priorPos);
 		 }
 		 
 		 Interval nInt = new Interval(getLabel(att), val, cls);
 		 intervalList.add(nInt);
 		 evaluateLocalMerges(att, intervalList);
 		 insertIntervals(att, intervalList);
+		 dirty[att] = true;
 	 }
 	 
 	 // Make an spot for new points, size limit's been achieved
@@ -294,8 +469,8 @@ public class LOFDiscretizer extends MOADiscretize {
 	  PrintWriter dataout = new PrintWriter(data);
 	  
 	  for (int i = 0; i < elemQ.length; i++) {
-		  dataout.print(getInstanceValue(elemQ[att1].get(i).x) + "," + 
-				  getInstanceValue(elemQ[att2].get(i).x) + "," + getInstanceValue(elemQ[att1].get(i).y) + "\n");
+		  dataout.print(getInstanceValue(elemQ[att1].value(i)) + "," + 
+				  getInstanceValue(elemQ[att2].value(i)) + "," + getInstanceValue(elemQ[att1].classAt(i)) + "\n");
 	  }
 	  
 	  //Flush the output to the file
@@ -343,38 +518,35 @@ public class LOFDiscretizer extends MOADiscretize {
 	  boolean boundary = false;
 	  
 	  if(value != ceiling.end) {
-		  Entry<Float, int[]> following = ceiling.histogram.ceilingEntry(value);		  
+		  PointHistogram hist = ceiling.histogram;
+		  int following = hist.ceiling(value);		  
 		  // The next point is in another interval (interval with a single point)
-		  if(following == null) {		  
-			  Entry<Float, Interval> higherE = allIntervals[att].higherEntry(ceiling.end);
-			  if(higherE == null) {
+		  if(following < 0) {		  
+			  int higherPos = allIntervals[att].higher(ceiling.end);
+			  if(higherPos < 0) {
 				  boundary = true; // no more points at the right side
 			  } else {
-				  following = higherE.getValue().histogram.ceilingEntry(value);
-				  int[] cd1 = following.getValue();		
-				  int[] cd2 = new int[cd1.length];
-				  cd2[clas]++;
-				  boundary = isBoundary(cd1, cd2);
+				  PointHistogram hhist = allIntervals[att].valueAt(higherPos).histogram;
+				  following = hhist.ceiling(value);
+				  boundary = isBoundary(hhist.counts(), hhist.offset(following), clas);
 			  }
 		  } else {
 			  // If the point already exists before, evaluate if it is now a boundary
-			  if(following.getKey() == value) {
+			  if(hist.keyAt(following) == value) {
 				  
-				  Entry<Float, int[]> nextnext = ceiling.histogram.higherEntry(value);
-				  if(nextnext != null) {
-					  int[] cd1 = following.getValue();				  
-					  cd1[clas]++;
-					  boundary = isBoundary(cd1, nextnext.getValue());
-					  cd1[clas]--;
+				  int nextnext = hist.higher(value);
+				  if(nextnext >= 0) {
+					  int[] cd = hist.counts();
+					  int off = hist.offset(following);
+					  cd[off + clas]++;
+					  boundary = isBoundary(cd, off, cd, hist.offset(nextnext));
+					  cd[off + clas]--;
 				  } else {
 					  // Last point in the interval, it does not make sense to split
 					  boundary = false;
 				  }
 			  } else {
-				  int[] cd1 = following.getValue();		
-				  int[] cd2 = new int[cd1.length];
-				  cd2[clas]++;
-				  boundary = isBoundary(cd1, cd2);
+				  boundary = isBoundary(hist.counts(), hist.offset(following), clas);
 			  }
 		  }
 	  }
@@ -389,9 +561,19 @@ public class LOFDiscretizer extends MOADiscretize {
    * @return @return True if it is boundary, false otherwise.
    */
   private boolean isBoundary(int[] cd1, int[] cd2){
+	  return isBoundary(cd1, 0, cd2, 0);
+  }
+  
+  /**
+   * Check histograms to assert the boundary condition (packed histograms).
+   * @param cd1 Class counts for point one, from offset off1.
+   * @param cd2 Class counts for point two, from offset off2.
+   * @return True if it is boundary, false otherwise.
+   */
+  private boolean isBoundary(int[] cd1, int off1, int[] cd2, int off2){
 	  int count = 0;
-	  for (int i = 0; i < cd1.length; i++) {
-		  if(cd1[i] + cd2[i] > 0) {
+	  for (int i = 0; i < numClasses; i++) {
+		  if(cd1[off1 + i] + cd2[off2 + i] > 0) {
 			  if(++count > 1) {
 				  return true;
 			  }			  
@@ -401,97 +583,109 @@ public class LOFDiscretizer extends MOADiscretize {
   }
   
   /**
-   * Print basic information about a list of intervals
-   * @param att Attribute index
-   * @param intervals List of intervals
+   * Check the boundary condition between a point and a new point of a given class.
+   * @param cd Class counts for the point, from offset off.
+   * @param clas Class of the new point.
+   * @return True if it is boundary, false otherwise.
    */
-  private void printIntervals(int att, Collection<Interval> intervals){
-	  System.out.println("Atributo: " + att);
-	  int sum = 0;
-	  for (Iterator<Interval> iterator = intervals.iterator(); iterator.hasNext();) {
-		Interval interval = (Interval) iterator.next();
-		for (int i = 0; i < interval.cd.length; i++) {
-			sum += interval.cd[i];
-		}
-		System.out.println(interval.label + "-" + interval.end + "," + sum);
-	  }	  
+  private boolean isBoundary(int[] cd, int off, int clas){
+	  int count = 0;
+	  for (int i = 0; i < numClasses; i++) {
+		  if(cd[off + i] > 0 || i == clas) {
+			  if(++count > 1) {
+				  return true;
+			  }			  
+		  }
+	  }
+	  return false;
   }
   
   /**
    * Apply standard FUSINTER to the first batch of examples. Then the discretization scheme
-   * is initialized to apply further local changes.
+   * is initialized to apply further local changes. Points are packed and sorted as primitive 
+   * longs, and attributes are initialized in parallel (see the parallel threshold).
    * @param model An example from this batch.
    */
-  private void batchFusinter(Instance model) {
-	  float[][] sorted = new float[numAttributes][];
-	  int nvalid = 0;
-	  LinkedList<Tuple<Float, Byte>> relem = null;
-	  for (int i = 0; i < elemQ.length; i++) {
-		  if(!elemQ[i].isEmpty()){
-			  relem = elemQ[i];
-			  break;
-		  }			  
-	  }
-	  
-	  if(relem == null)
+  private void batchFusinter(final Instance model) {
+	  boolean empty = true;
+	  for (int i = 0; i < elemQ.length; i++)
+		  empty &= elemQ[i].isEmpty();
+	  if(empty) {
 		  System.err.println("Error: No numerical attribute in the dataset.");
-
-	  final int[] classData = new int[relem.size()];
-	  for (int j = 0; j < relem.size(); j++) {
-		  classData[j] = relem.get(j).y;
-		  nvalid++;
+		  return;
 	  }
 	  
-	  for (int i = numAttributes - 1; i >= 0; i--) {
+	  // Attributes do not share intervals, queues or labels
+	  forEachAttribute(numAttributes, i -> {
 		  if ((m_DiscretizeCols.isInRange(i))
 				  && (model.attribute(i).isNumeric())
-				  && (model.classIndex() != i)) {
-			  Integer[] idx = new Integer[nvalid];
-			  sorted[i] = new float[elemQ[i].size()];
-			  for (int j = 0; j < idx.length; j++) {
-				  idx[j] = j;
-				  sorted [i][j] = getInstanceValue(elemQ[i].get(j).x);
-			  }
-			  final float[] data = sorted[i];
-			  
+				  && (model.classIndex() != i)
+				  && !elemQ[i].isEmpty()) {
 			  // Order by feature value and class
-			  Arrays.sort(idx, new Comparator<Integer>() {
-			      @Override 
-			      public int compare(final Integer o1, final Integer o2) {
-			    	  int cmp_value = Float.compare(data[o1], data[o2]);
-			    	  if(cmp_value == 0) 
-			    		  cmp_value = Integer.compare(classData[o1], classData[o2]);
-			          return cmp_value;
-			      }
-			  });
+			  long[] points = new long[elemQ[i].size()];
+			  for (int j = 0; j < points.length; j++)
+				  points[j] = packPoint(getInstanceValue(elemQ[i].value(j)), elemQ[i].classAt(j));
+			  Arrays.sort(points);
 			  
-			  allIntervals[i] = initIntervals(i, idx);
-			  printIntervals(i, allIntervals[i].values());
+			  allIntervals[i] = initIntervals(i, points);
 			  ArrayList<Interval> intervalList = new ArrayList<Interval>(allIntervals[i].values());
 			  evaluateLocalMerges(i, intervalList);
-			  allIntervals[i] = new TreeMap<Float, Interval>();
-			  // Update keys in the tree map
+			  allIntervals[i] = new SortedFloatMap<Interval>(intervalList.size());
+			  // Update keys in the map
 			  for (int j = 0; j < intervalList.size(); j++) {
 				allIntervals[i].put(intervalList.get(j).end, intervalList.get(j));
 			  }
-			  printIntervals(i, allIntervals[i].values());
+			  dirty[i] = true;
 		  }
-	  }
+	  });
   }
   
+  /**
+   * Pack a point in a long, so that points are sorted by value (as in Float.compare) and
+   * then by class. The value bits are flipped for negative numbers to keep the order as signed ints.
+   * @param value Value of the point
+   * @param cls Class of the point
+   * @return Packed point
+   */
+  private static long packPoint(float value, int cls) {
+	  int bits = Float.floatToIntBits(value);
+	  if(bits < 0)
+		  bits ^= Integer.MAX_VALUE;
+	  return ((long) bits << 32) | cls;
+  }
+  
+  private static float pointValue(long point) {
+	  int bits = (int) (point >> 32);
+	  if(bits < 0)
+		  bits ^= Integer.MAX_VALUE;
+	  return Float.intBitsToFloat(bits);
+  }
+  
+  private static int pointClass(long point) {
+	  return (int) point;
+  }
+
+  
   /**
    * Apply local merges to a list of intervals until no more improvements can be obtained.
+   * At each step, the pair of adjacent intervals with the largest improvement is merged (the
+   * leftmost one if tied). Short lists are scanned linearly, longer ones (e.g. the initial 
+   * batch) keep the gains of all pairs in a heap, so that only the neighbors of a merge are
+   * evaluated again.
    * @param att Attribute index
-   * @param intervalList List of intervals to merge
+   * @param intervalList List of intervals to merge (merged intervals are removed)
    */
   private void evaluateLocalMerges(int att, List<Interval> intervalList) {
+	if(intervalList.size() > 8) {
+		evaluateMergesWithHeap(att, intervalList);
+		return;
+	}
 	
 	while(intervalList.size() > 1) {
 		float globalDiff = 0;
 		int posMin = 0;
 		for(int i = 0; i < intervalList.size() - 1; i++) {
-			float newLocalCrit = evaluteMerge(intervalList.get(i).cd, intervalList.get(i+1).cd);
-			float difference = intervalList.get(i).crit + intervalList.get(i+1).crit - newLocalCrit;
+			float difference = mergeGain(intervalList.get(i), intervalList.get(i+1));
 			if(difference > globalDiff){
 				posMin = i;
 				globalDiff = difference;
@@ -503,6 +697,7 @@ public class LOFDiscretizer extends MOADiscretize {
 			Interval int2 = intervalList.remove(posMin+1);
 			int oldLabel = int1.mergeIntervals(int2);
 			labelsToUse[att].add(oldLabel);
+			dirty[att] = true;
 		} else {
 			break;
 		}
@@ -510,6 +705,76 @@ public class LOFDiscretizer extends MOADiscretize {
 	
   }
   
+  /**
+   * Same merges as {@link #evaluateLocalMerges(int, List)}, driven by a heap of gains. 
+   * Pairs are identified by the original position of their left interval, which keeps
+   * the order of positions among the intervals left, and thus the same tie-breaking.
+   * @param att Attribute index
+   * @param intervalList List of intervals to merge (merged intervals are removed)
+   */
+  private void evaluateMergesWithHeap(int att, List<Interval> intervalList) {
+	Interval[] intervals = intervalList.toArray(new Interval[intervalList.size()]);
+	int n = intervals.length;
+	int[] next = new int[n], prev = new int[n];
+	for (int i = 0; i < n; i++) {
+		next[i] = i + 1;
+		prev[i] = i - 1;
+	}
+	GainHeap heap = new GainHeap(n);
+	for (int i = 0; i < n - 1; i++)
+		updateGain(heap, intervals, i, i + 1);
+	
+	boolean merged = false;
+	while(!heap.isEmpty()) {
+		int left = heap.peek();
+		int right = next[left];
+		int oldLabel = intervals[left].mergeIntervals(intervals[right]);
+		labelsToUse[att].add(oldLabel);
+		merged = true;
+		// Unlink the right interval, its pair is gone
+		heap.remove(right);
+		intervals[right] = null;
+		next[left] = next[right];
+		if(next[left] < n)
+			prev[next[left]] = left;
+		// Only the pairs that include the merged interval change
+		if(next[left] < n)
+			updateGain(heap, intervals, left, next[left]);
+		else
+			heap.remove(left);
+		if(prev[left] >= 0)
+			updateGain(heap, intervals, prev[left], left);
+	}
+	
+	if(merged) {
+		intervalList.clear();
+		for (int i = 0; i < n; i++) {
+			if(intervals[i] != null)
+				intervalList.add(intervals[i]);
+		}
+		dirty[att] = true;
+	}
+  }
+  
+  /**
+   * Keep in the heap the gain of a pair of adjacent intervals, only if it is positive.
+   */
+  private void updateGain(GainHeap heap, Interval[] intervals, int left, int right) {
+	float difference = mergeGain(intervals[left], intervals[right]);
+	if(difference > 0)
+		heap.set(left, difference);
+	else
+		heap.remove(left);
+  }
+  
+  /**
+   * @return Improvement of the criterion if two adjacent intervals are merged.
+   */
+  private float mergeGain(Interval int1, Interval int2) {
+	float newLocalCrit = evaluteMerge(int1.cd, int2.cd);
+	return int1.crit + int2.crit - newLocalCrit;
+  }
+  
   /**
    * Evaluate a merge using both class histograms and the quadratic entropy measure.
    * @param cd1 Class histogram #1
@@ -547,21 +812,21 @@ public class LOFDiscretizer extends MOADiscretize {
   /**
    * Create the first intervals with the set of boundary points.
    * @param att Attribute index
-   * @param idx Vector of indexes sorted by value.
-   * @return A tree of tuples (boundary point, interval associated).
+   * @param points Points (value and class) of the attribute, packed and sorted by value.
+   * @return A map of tuples (boundary point, interval associated).
    */
-  private TreeMap <Float, Interval> initIntervals(int att, Integer[] idx) {
+  private SortedFloatMap<Interval> initIntervals(int att, long[] points) {
 		
-	  	TreeMap <Float, Interval> intervals = new TreeMap<Float, Interval> ();
-		LinkedList<Tuple<Float, int[]>> distinctPoints = new LinkedList<Tuple<Float, int[]>>();
-		float valueAnt = getInstanceValue(elemQ[att].get(idx[0]).x);
-		int classAnt = elemQ[att].get(idx[0]).y;
+	  	SortedFloatMap<Interval> intervals = new SortedFloatMap<Interval>();
+		ArrayList<Tuple<Float, int[]>> distinctPoints = new ArrayList<Tuple<Float, int[]>>();
+		float valueAnt = pointValue(points[0]);
+		int classAnt = pointClass(points[0]);
 		int[] cd = new int[numClasses];
 		cd[classAnt]++;
 		// Compute statically the set of distinct points (boundary)
-		for(int i = 1; i < idx.length;i++) {
-			float val = getInstanceValue(elemQ[att].get(idx[i]).x);
-			int clas = elemQ[att].get(idx[i]).y;
+		for(int i = 1; i < points.length;i++) {
+			float val = pointValue(points[i]);
+			int clas = pointClass(points[i]);
 			if(val == valueAnt) {
 				cd[clas]++;
 			} else {
@@ -596,25 +861,42 @@ public class LOFDiscretizer extends MOADiscretize {
 		return intervals;
 	}
   
+  @SuppressWarnings("unchecked")
+  private static SortedFloatMap<Interval>[] newIntervalMaps(int numAttributes) {
+	  return (SortedFloatMap<Interval>[]) new SortedFloatMap<?>[numAttributes];
+  }
+  
+  @SuppressWarnings("unchecked")
+  private static Queue<Integer>[] newLabelQueues(int numAttributes) {
+	  return (Queue<Integer>[]) new Queue<?>[numAttributes];
+  }
+  
   /**
    * Initialize all the variables during the first stage.
    * @param inst The first example
    */
   private void initializeLayers(Instance inst) {
-	  m_DiscretizeCols.setUpper(inst.numAttributes() - 1);
+	  updateRangeUpper(inst.numAttributes() - 1);
 	  numClasses = inst.numClasses();
 	  numAttributes = inst.numAttributes();
-	  allIntervals = new TreeMap[numAttributes];
+	  allIntervals = newIntervalMaps(numAttributes);
+	  dirty = new boolean[numAttributes];
 	  m_CutPoints = new double[numAttributes][];
 	  m_Labels = new String[numAttributes][];
-	  elemQ = new LinkedList[numAttributes];
-	  labelsToUse = new Queue[numAttributes];
+	  schemeChanged();
+	  elemQ = new PointQueue[numAttributes];
+	  labelsToUse = newLabelQueues(numAttributes);
 	  contLabels = new int[numAttributes];
 	  classByAtt = new int[numAttributes][];
+	  if(memoryBudget > 0) {
+		  pointOrder = new int[1024];
+		  orderHead = orderSize = 0;
+		  removedByAtt = new int[numAttributes];
+	  }
 	  
 	  for (int i = 0; i < inst.numAttributes(); i++) {
-		  allIntervals[i] = new TreeMap<Float, Interval>();
-		  elemQ[i] = new LinkedList<Tuple<Float, Byte>>();
+		  allIntervals[i] = new SortedFloatMap<Interval>();
+		  elemQ[i] = new PointQueue();
 		  labelsToUse[i] = new LinkedList<Integer>();
 		  contLabels[i] = maxLabels;
 		  classByAtt[i] = new int[numClasses];
@@ -657,10 +939,9 @@ public class LOFDiscretizer extends MOADiscretize {
   
   @Override
   public int getAttValGivenClass(int attI, double rVal, int dVal, int classVal) {
-	  Map.Entry<Float, Interval> centralE = allIntervals[attI]
-			  .ceilingEntry(getInstanceValue(rVal));
-	  if(centralE != null) {
-		  return centralE.getValue().cd[classVal];
+	  int pos = allIntervals[attI].ceiling(getInstanceValue(rVal));
+	  if(pos >= 0) {
+		  return allIntervals[attI].valueAt(pos).cd[classVal];
 	  }
 	  return 0;		
   }
@@ -677,6 +958,166 @@ public class LOFDiscretizer extends MOADiscretize {
 		  return ++contLabels[att];
 	  return labelsToUse[att].poll();
   }
+  
+  /**
+   * Intervals and their histograms (one entry per distinct point in the interval), queue of
+   * points waiting to be removed and free labels of every attribute.
+   */
+  @Override
+  public long estimateByteSize() {
+	  long size = super.estimateByteSize() + MemoryEstimate.sizeOf(contLabels) + MemoryEstimate.sizeOf(classByAtt)
+			  + MemoryEstimate.sizeOf(pointOrder) + MemoryEstimate.sizeOf(removedByAtt);
+	  if(allIntervals == null)
+		  return size;
+	  long cd = MemoryEstimate.array(numClasses, 4);
+	  // label, end, crit, cd, histogram and outer reference
+	  long interval = MemoryEstimate.align(MemoryEstimate.OBJECT_HEADER + 3 * 4 + 3 * MemoryEstimate.REFERENCE);
+	  size += 3 * MemoryEstimate.array(numAttributes, MemoryEstimate.REFERENCE);
+	  for (int i = 0; i < numAttributes; i++) {
+		  size += allIntervals[i].estimateByteSize() + allIntervals[i].size() * (interval + cd);
+		  for (int j = 0; j < allIntervals[i].size(); j++) {
+			  Interval in = allIntervals[i].valueAt(j);
+			  if(in.histogram != null)
+				  size += in.histogram.estimateByteSize();
+		  }
+		  size += elemQ[i].estimateByteSize();
+		  size += MemoryEstimate.linkedList(labelsToUse[i].size()) 
+				  + labelsToUse[i].size() * MemoryEstimate.BOXED_INTEGER;
+	  }
+	  return size;
+  }
+	
+  /**
+   * Parameters, intervals with their histograms, queues of points and free labels of every attribute.
+   */
+  @Override
+  public void writeState(CheckpointBuffer out) {
+	  writeScheme(out);
+	  out.putInt(totalCount);
+	  out.putInt(numClasses);
+	  out.putInt(numAttributes);
+	  out.putFloat(lambda);
+	  out.putFloat(alpha);
+	  out.putInt(initTh);
+	  out.putInt(maxHist);
+	  out.putInt(decimals);
+	  out.putInt(maxLabels);
+	  out.putLong(memoryBudget);
+	  out.putBoolean(allIntervals != null);
+	  if(allIntervals == null)
+		  return;
+	  out.putInts(contLabels);
+	  out.putInts(classByAtt);
+	  // Classes of the queued points are written as bytes, unless some of them does not fit
+	  boolean wideClasses = numClasses > Byte.MAX_VALUE + 1;
+	  for (int i = 0; i < numAttributes; i++) {
+		  out.putInt(labelsToUse[i].size());
+		  for (int label : labelsToUse[i])
+			  out.putInt(label);
+		  out.putInt(elemQ[i].size());
+		  for (int j = 0; j < elemQ[i].size(); j++) {
+			  out.putFloat(elemQ[i].value(j));
+			  if(wideClasses)
+				  out.putShort((short) elemQ[i].classAt(j));
+			  else
+				  out.putByte((byte) elemQ[i].classAt(j));
+		  }
+		  out.putInt(allIntervals[i].size());
+		  for (int j = 0; j < allIntervals[i].size(); j++) {
+			  Interval interval = allIntervals[i].valueAt(j);
+			  out.putFloat(allIntervals[i].keyAt(j));
+			  out.putInt(interval.label);
+			  out.putFloat(interval.end);
+			  out.putFloat(interval.crit);
+			  out.putInts(interval.cd);
+			  out.putInt(interval.histogram == null ? -1 : interval.histogram.size());
+			  if(interval.histogram != null) {
+				  for (int k = 0; k < interval.histogram.size(); k++) {
+					  out.putFloat(interval.histogram.keyAt(k));
+					  out.putInts(interval.histogram.countsAt(k));
+				  }
+			  }
+		  }
+	  }
+	  // Arrival order of the points (only with a memory budget)
+	  int[] order = null;
+	  if(pointOrder != null) {
+		  order = new int[orderSize];
+		  for (int j = 0; j < orderSize; j++)
+			  order[j] = pointOrder[(orderHead + j) % pointOrder.length];
+	  }
+	  out.putInts(order);
+	  out.putInts(removedByAtt);
+  }
+  
+  @Override
+  public void readState(CheckpointBuffer in) {
+	  readScheme(in);
+	  totalCount = in.getInt();
+	  numClasses = in.getInt();
+	  numAttributes = in.getInt();
+	  lambda = in.getFloat();
+	  alpha = in.getFloat();
+	  initTh = in.getInt();
+	  maxHist = in.getInt();
+	  decimals = in.getInt();
+	  maxLabels = in.getInt();
+	  memoryBudget = in.getLong();
+	  if(!in.getBoolean()) {
+		  allIntervals = null;
+		  return;
+	  }
+	  contLabels = in.getInts();
+	  classByAtt = in.getInts2();
+	  boolean wideClasses = numClasses > Byte.MAX_VALUE + 1;
+	  allIntervals = newIntervalMaps(numAttributes);
+	  dirty = new boolean[numAttributes];
+	  Arrays.fill(dirty, true);
+	  elemQ = new PointQueue[numAttributes];
+	  labelsToUse = newLabelQueues(numAttributes);
+	  for (int i = 0; i < numAttributes; i++) {
+		  labelsToUse[i] = new LinkedList<Integer>();
+		  int size = in.getInt();
+		  for (int j = 0; j < size; j++)
+			  labelsToUse[i].add(in.getInt());
+		  size = in.getInt();
+		  elemQ[i] = new PointQueue(size);
+		  for (int j = 0; j < size; j++) {
+			  float x = in.getFloat();
+			  elemQ[i].add(x, wideClasses ? in.getShort() : in.getByte());
+		  }
+		  size = in.getInt();
+		  allIntervals[i] = new SortedFloatMap<Interval>(size);
+		  for (int j = 0; j < size; j++) {
+			  float key = in.getFloat();
+			  Interval interval = new Interval();
+			  interval.label = in.getInt();
+			  interval.end = in.getFloat();
+			  interval.crit = in.getFloat();
+			  interval.cd = in.getInts();
+			  int hsize = in.getInt();
+			  if(hsize >= 0) {
+				  interval.histogram = new PointHistogram(numClasses, hsize);
+				  for (int k = 0; k < hsize; k++) {
+					  float value = in.getFloat();
+					  interval.histogram.add(value, in.getInts());
+				  }
+			  }
+			  allIntervals[i].put(key, interval);
+		  }
+	  }
+	  int[] order = in.getInts();
+	  if(order != null) {
+		  pointOrder = new int[Math.max(1024, order.length * 2)];
+		  System.arraycopy(order, 0, pointOrder, 0, order.length);
+		  orderHead = 0;
+		  orderSize = order.length;
+	  } else {
+		  pointOrder = null;
+		  orderHead = orderSize = 0;
+	  }
+	  removedByAtt = in.getInts();
+  }
 	
 	class Interval {
 		/**
@@ -688,7 +1129,7 @@ public class LOFDiscretizer extends MOADiscretize {
 		int label;
 		float end;
 		int [] cd;
-		TreeMap<Float, int[]> histogram;
+		PointHistogram histogram;
 		float crit;
 		
 		public Interval() {
@@ -698,7 +1139,7 @@ public class LOFDiscretizer extends MOADiscretize {
 		public Interval(int _label) {
 			label = _label;
 			end = -1;
-			histogram = new TreeMap<Float, int[]>();
+			histogram = new PointHistogram(numClasses);
 			cd = new int[numClasses];
 			crit = Float.MIN_VALUE;
 		}
@@ -715,10 +1156,10 @@ public class LOFDiscretizer extends MOADiscretize {
 		public Interval(int _label, float _end, int _class) {
 			label = _label;
 			end = _end;
-			histogram = new TreeMap<Float, int[]>();
+			histogram = new PointHistogram(numClasses);
 			cd = new int[numClasses];
 			cd[_class] = 1;
-			histogram.put(_end, cd.clone());
+			histogram.add(_end, _class);
 			crit = Float.MIN_VALUE;
 		}
 		
@@ -728,19 +1169,11 @@ public class LOFDiscretizer extends MOADiscretize {
 			end = other.end;
 			cd = other.cd.clone();
 			crit = other.crit;
-			histogram = new TreeMap<Float, int[]>();
-			histogram.putAll(other.histogram);
+			histogram = new PointHistogram(other.histogram);
 		}
 		
 		public void addPoint(int att, float value, int cls){
-			int[] pd = histogram.get(value);
-			if(pd != null) {
-				pd[cls]++;
-			} else {				
-				pd = new int[cd.length];
-				pd[cls]++;
-				histogram.put(value, pd);
-			}
+			histogram.add(value, cls);
 			// Update values
 			cd[cls]++;
 			if(value > end) 
@@ -748,14 +1181,7 @@ public class LOFDiscretizer extends MOADiscretize {
 		}
 		
 		public void addPoint(float value, int cd[]){
-			int[] prevd = histogram.get(value);
-			if(prevd == null) {
-				prevd = new int[numClasses];
-			}
-			
-			for (int i = 0; i < cd.length; i++)
-					prevd[i] += cd[i];
-			histogram.put(value, prevd);
+			histogram.add(value, cd);
 			
 			for (int i = 0; i < cd.length; i++) {
 				this.cd[i] += cd[i];
@@ -770,24 +1196,19 @@ public class LOFDiscretizer extends MOADiscretize {
 		}
 		
 		public void removePoint(int att, float value, int cls) {
-			int[] pd = histogram.get(value);
-			if(pd != null) {
-				if(pd[cls] > 0) {
-					pd[cls]--;
+			int pos = histogram.indexOf(value);
+			if(pos >= 0) {
+				int[] pd = histogram.counts();
+				int off = histogram.offset(pos);
+				if(pd[off + cls] > 0) {
+					pd[off + cls]--;
 					cd[cls]--;
 				} else {
 					System.err.println("Bad histogram.");
 				}
-				boolean delete = true;
-				// If all values are equal to zero, remove the point from the map
-				for (int i = 0; i < pd.length; i++) {
-					if(pd[i] > 0){
-						delete = false;
-						break;
-					}						
-				}
-				if(delete){ // We keep intervals with at least one point
-					histogram.remove(value);
+				// If all values are equal to zero, remove the point from the histogram
+				if(histogram.isEmptyAt(pos)){ // We keep intervals with at least one point
+					histogram.removeAt(pos);
 				}
 			} else {
 				// Error, no point in this range.
@@ -795,26 +1216,18 @@ public class LOFDiscretizer extends MOADiscretize {
 			}
 			// Find a new maximum if the point removed is the maximum
 			if(value == end) {
-				Float newend = histogram.floorKey(value); // get the new maximum
-				if(newend != null)
-					end = newend;
+				int newend = histogram.floor(value); // get the new maximum
+				if(newend >= 0)
+					end = histogram.keyAt(newend);
 			}
 		}
 		
 		public Interval splitInterval(int att, float value) {
 			
-			TreeMap<Float, int[]> nHist = new TreeMap<Float, int[]>();
 			int[] nCd = new int[cd.length];
-			
-			for (Iterator<Entry<Float, int[]>> iterator = 
-					histogram.tailMap(value, false).entrySet().iterator(); iterator.hasNext();) {
-				Entry<Float, int[]> entry = (Entry) iterator.next();
-				nHist.put(entry.getKey(), entry.getValue());
-				for(int i = 0; i < entry.getValue().length; i++){
-					nCd[i] += entry.getValue()[i];
-					cd[i] -= entry.getValue()[i];
-				}					
-				iterator.remove();
+			PointHistogram nHist = histogram.splitAfter(value, nCd);
+			for(int i = 0; i < nCd.length; i++){
+				cd[i] -= nCd[i];
 			}
 			
 			if(nHist.isEmpty())
@@ -866,17 +1279,7 @@ public class LOFDiscretizer extends MOADiscretize {
 			for (int i = 0; i < cd.length; i++) {
 				cd[i] += interv2.cd[i];
 			}
-			for (Iterator iterator = interv2.histogram.entrySet().iterator(); iterator.hasNext();) {
-				Entry<Float, int[]> entry = (Entry) iterator.next();
-				int[] v = histogram.get(entry.getKey());
-				if(v != null) {
-					for (int i = 0; i < v.length; i++){
-						v[i] += entry.getValue()[i];
-					}
-				} else {
-					histogram.put(entry.getKey(), entry.getValue());
-				}
-			}
+			histogram.merge(interv2.histogram);
 			
 			updateCriterion();
 			return oldlab;
@@ -21,16 +21,18 @@
 
 package moa.reduction.bayes;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.PriorityQueue;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
+import moa.reduction.core.ColumnarBatch;
 import moa.reduction.core.MOADiscretize;
+import moa.reduction.core.MemoryEstimate;
 import weka.core.Range;
 
 import com.yahoo.labs.samoa.instances.Instance;
@@ -67,6 +69,10 @@ public class OCdiscretize extends MOADiscretize{
   protected int[] phases;
   protected int initialElements = 100;
   protected int numClasses = 2;
+  
+  /** Estimated sizes of Bin (value, distribution and outer reference), Interval (lower bound, 
+   * distribution, counter, Q value and outer reference) and Pair (value, class and outer reference) */
+  private static final int BIN_SIZE = 32, INTERVAL_SIZE = 40, PAIR_SIZE = 32;
 
   /** Output binary attributes for discretized attributes. */
   protected boolean m_MakeBinary = false;
@@ -92,10 +98,9 @@ public class OCdiscretize extends MOADiscretize{
   }
 
   
-  public Instance applyDiscretization(Instance inst) {
-	  if(m_Init)
-		  return convertInstance(inst);
-	  return inst;
+  @Override
+  protected boolean isSchemeReady() {
+	  return m_Init;
   } 
   
   public void updateEvaluator(Instance instance) {
@@ -106,45 +111,77 @@ public class OCdiscretize extends MOADiscretize{
 		  
 	  totalCount++;
 	  
-	  for (int i = instance.numAttributes() - 1; i >= 0; i--) {
+	  final int count = totalCount;
+	  forEachAttribute(instance.numAttributes(), i -> {
 		  if ((m_DiscretizeCols.isInRange(i))
 			  && (instance.attribute(i).isNumeric())
 			  && (instance.classIndex() != i)) {
 			  	if (!instance.isMissing(i)) {		  
-			  		OnlineChiMerge(i, instance); 
-			  		if(!interval_l2.get(i).isEmpty())  {
-			  			m_Init = true;
-			  			// Transform intervals in list to a matrix
-				  		List<Interval> l = interval_l2.get(i);
-				  		TreeSet<Double> ss = new TreeSet<Double>();
-				  		for(Interval inter: l) ss.add(inter.lower);
-		  				m_CutPoints[i] = new double[ss.size()];
-		  				int j = 0;
-		  				for (Iterator iterator = ss.iterator(); iterator
-								.hasNext();) {
-							Double double1 = (Double) iterator.next();
-							
-						}
-				  		for(Double lower: ss) {
-				  			if(j > 0)
-				  				m_CutPoints[i][j-1] = lower;
-				  			j++;
-				  		}
-				  		m_CutPoints[i][j-1] = Float.POSITIVE_INFINITY;
-			  		}			  		
+			  		OnlineChiMerge(i, instance.value(i), instance.classValue(), count); 
+			  		updateCutPoints(i);
 			  	}  
 		  }
-	  }
+	  });
 	  
 
 	 /*if(totalCount % 101 == 0) 
 		 writeCPointsToFile(1, 2, totalCount, "OC");*/
   }
 
+  /**
+   * Update the intervals attribute by attribute over the batch. Cut points are only
+   * rebuilt once per attribute at the end of the batch.
+   */
+  @Override
+  public void updateEvaluator(ColumnarBatch batch) {
+	  Instance model = batch.instance(0);
+	  if(trees == null) {
+		  initialize(model);
+	  }
+	  
+	  final int first = totalCount;
+	  double[] classes = batch.classValues();
+	  forEachAttribute(batch.numAttributes(), i -> {
+		  if ((m_DiscretizeCols.isInRange(i))
+			  && (model.attribute(i).isNumeric())
+			  && (batch.classIndex() != i)) {
+			  double[] column = batch.column(i);
+			  for (int r = 0; r < column.length; r++) {
+				  if(!Double.isNaN(column[r]))
+					  OnlineChiMerge(i, column[r], classes[r], first + r + 1);
+			  }
+			  updateCutPoints(i);
+		  }
+	  });
+	  totalCount = first + batch.size();
+  }
+  
+  /**
+   * Publish the cut points of an attribute from its last list of intervals (if any).
+   */
+  private void updateCutPoints(int i) {
+	  if(!interval_l2.get(i).isEmpty())  {
+		  m_Init = true;
+		  // Transform intervals in list to a matrix
+		  List<Interval> l = interval_l2.get(i);
+		  TreeSet<Double> ss = new TreeSet<Double>();
+		  for(Interval inter: l) ss.add(inter.lower);
+		  double[] cutPoints = new double[ss.size()];
+		  int j = 0;
+		  for(Double lower: ss) {
+			  if(j > 0)
+				  cutPoints[j-1] = lower;
+			  j++;
+		  }
+		  cutPoints[j-1] = Float.POSITIVE_INFINITY;
+		  setCutPoints(i, cutPoints);
+	  }
+  }
+
   private void initialize(Instance inst){
 	  
 	  this.numClasses = inst.numClasses();
-	  m_DiscretizeCols.setUpper(inst.numAttributes() - 1);	  
+	  updateRangeUpper(inst.numAttributes() - 1);	  
 	  trees = new ArrayList<TreeMap<Double, Bin>>(inst.numAttributes());
 	  interval_q = new ArrayList<PriorityQueue<Interval>>();
 	  interval_l = new ArrayList<List<Interval>>();
@@ -152,6 +189,7 @@ public class OCdiscretize extends MOADiscretize{
 	  example_q = new ArrayList<LinkedList<Pair>>();	  
 	  it_bin = new ArrayList<LinkedList<Double>>();
 	  m_CutPoints = new double[inst.numAttributes()][];	
+	  schemeChanged();
 	  previous_bin = new ArrayList<Bin>();
 	  last_interval = new ArrayList<Interval>();
 	  
@@ -169,15 +207,14 @@ public class OCdiscretize extends MOADiscretize{
 	  }  
   }
   
-  private void OnlineChiMerge(int index, Instance inst){
+  private void OnlineChiMerge(int index, double value, double clas, int count){
 	  
-	  double value = inst.value(index);
-	  if(phases[index] != 1) addToMainTree(index, value, inst.classValue());		
+	  if(phases[index] != 1) addToMainTree(index, value, clas);		
 	  
 	  if(phases[index] == 0){		    
-		  if(totalCount >= initialElements) reInit(index); // go to next phase
+		  if(count >= initialElements) reInit(index); // go to next phase
 	  } else if (phases[index] == 1) {		  
-		  example_q.get(index).add(new Pair(value, inst.classValue()));
+		  example_q.get(index).add(new Pair(value, clas));
 		  if(!it_bin.get(index).isEmpty()) {
 			  double key = it_bin.get(index).pollFirst();
 			  Bin cbin = trees.get(index).get(key);
@@ -308,7 +345,9 @@ public class OCdiscretize extends MOADiscretize{
       return qval;
   }
 
-  private class Bin {
+  private class Bin implements Serializable {
+
+	    private static final long serialVersionUID = 1L;
 
 	    final double value;
 	    int[] distrib;
@@ -329,7 +368,9 @@ public class OCdiscretize extends MOADiscretize{
 	    }
   }
   
-  private class Interval implements Comparable<Interval> {
+  private class Interval implements Comparable<Interval>, Serializable {
+
+	    private static final long serialVersionUID = 1L;
 
 	    double lower;
 	    int[] distrib;
@@ -370,7 +411,9 @@ public class OCdiscretize extends MOADiscretize{
   }
   
   
-  private class Pair {
+  private class Pair implements Serializable {
+
+	    private static final long serialVersionUID = 1L;
 
 	    double value;
 	    double clas;
@@ -390,7 +433,9 @@ public class OCdiscretize extends MOADiscretize{
 
   }
   
-  class desComparableInterval implements Comparator<Interval> {
+  class desComparableInterval implements Comparator<Interval>, Serializable {
+
+	  private static final long serialVersionUID = 1L;
 
 	  @Override
 	  public int compare(Interval o1, Interval o2) {
@@ -421,5 +466,32 @@ public Float condProbGivenClass(int attI, double rVal, int dVal, int classVal,
 	// TODO Auto-generated method stub
 	return null;
 }
+
   
+  /**
+   * Main tree of bins (one per distinct value), intervals and queues of every attribute.
+   * Intervals are counted once, in interval_l and interval_l2 (interval_q only refers to them).
+   */
+  @Override
+  public long estimateByteSize() {
+	  long size = super.estimateByteSize() + MemoryEstimate.sizeOf(phases);
+	  if(trees == null)
+		  return size;
+	  long distrib = MemoryEstimate.array(numClasses, 4);
+	  size += 8 * MemoryEstimate.arrayList(trees.size());
+	  for (int i = 0; i < trees.size(); i++) {
+		  int nbins = trees.get(i).size();
+		  size += MemoryEstimate.treeMap(nbins) + nbins * (MemoryEstimate.BOXED_DOUBLE + BIN_SIZE + distrib);
+		  int nintervals = interval_l.get(i).size() + interval_l2.get(i).size();
+		  size += MemoryEstimate.arrayList(Math.max(initialElements, interval_q.get(i).size()))
+				  + MemoryEstimate.arrayList(interval_l.get(i).size()) 
+				  + MemoryEstimate.arrayList(interval_l2.get(i).size())
+				  + nintervals * (INTERVAL_SIZE + distrib);
+		  size += MemoryEstimate.linkedList(example_q.get(i).size()) + example_q.get(i).size() * PAIR_SIZE;
+		  size += MemoryEstimate.linkedList(it_bin.get(i).size()) + it_bin.get(i).size() * MemoryEstimate.BOXED_DOUBLE;
+		  // previous bin and last interval
+		  size += BIN_SIZE + INTERVAL_SIZE + 2 * distrib;
+	  }
+	  return size;
+  }
 }
@@ -25,10 +25,12 @@ import java.util.Arrays;
 
 import com.yahoo.labs.samoa.instances.Instance;
 
+import moa.reduction.core.CheckpointBuffer;
+import moa.reduction.core.Checkpointable;
 import moa.reduction.core.MOAAttributeEvaluator;
+import moa.reduction.core.MemoryEstimate;
 import weka.attributeSelection.ASEvaluation;
 import weka.attributeSelection.AttributeEvaluator;
-import weka.core.AlgVector;
 import weka.core.Capabilities;
 import weka.core.Capabilities.Capability;
 import weka.core.Instances;
@@ -70,7 +72,7 @@ import weka.filters.unsupervised.attribute.NumericToBinary;
  * @see NumericToBinary
  */
 public class OFSGDAttributeEval extends ASEvaluation implements
-  AttributeEvaluator, MOAAttributeEvaluator {
+  AttributeEvaluator, MOAAttributeEvaluator, Checkpointable {
 
   /** for serialization */
   static final long serialVersionUID = -1949849512589218930L;
@@ -81,7 +83,11 @@ public class OFSGDAttributeEval extends ASEvaluation implements
   /** Just binarize numeric attributes */
   private boolean m_Binarize;
   
-  private AlgVector weights = null;
+  /** Weights of the linear model, one per attribute (class excluded) */
+  private double[] weights = null;
+  
+  /** Attributes with a non-zero weight (ascending), at most numFeatures + 1 after truncation */
+  private int[] support = new int[0];
   
   static final double eta = 0.2; // According to authors' criterion  
   static final double lambda = 0.01; // According to authors' criterion  
@@ -187,35 +193,70 @@ public class OFSGDAttributeEval extends ASEvaluation implements
     return result;
   }
   
+  /**
+   * Update the weights with an instance. Only the stored values of the instance and the
+   * attributes with a non-zero weight are visited, so the cost of an update does not 
+   * depend on the number of attributes for sparse instances.
+   */
   public void updateEvaluator(Instance inst) throws Exception {
 	  
 	  	if(weights == null) {
-	  		weights = new AlgVector(new double[inst.numAttributes() - 1]);
-	  		for(int i = 0; i < weights.numElements(); i++) weights.setElement(i, 0); 
-	  	}	  	
-
-	  	double[] rawx = Arrays.copyOfRange(inst.toDoubleArray(), 0, inst.numAttributes() - 1);
-	  	AlgVector x = new AlgVector(rawx);
-	  	double pred = weights.dotMultiply(x); 
+	  		weights = new double[inst.numAttributes() - 1];
+	  	}
+	  	
+	  	int nvalues = inst.numValues();
+	  	double pred = 0;
+	  	for(int p = 0; p < nvalues; p++) {
+	  		int i = inst.index(p);
+	  		if(i < weights.length)
+	  			pred += weights[i] * inst.valueSparse(p);
+	  	}
 	  	
 	  	if(pred * inst.classValue() <= 1){
-	  		x.scalarMultiply(eta * inst.classValue());
-	  		weights = weights.add(x); 
-	  		weights.scalarMultiply(Math.min(1.0, 1 / (Math.sqrt(lambda) * weights.norm())));
+	  		double step = eta * inst.classValue();
+	  		// Candidates: attributes with a non-zero weight or value, in ascending order
+	  		int[] candidates = new int[support.length + nvalues];
+	  		int ncand = 0, s = 0;
+	  		for(int p = 0; p < nvalues; p++) {
+	  			int i = inst.index(p);
+	  			if(i >= weights.length)
+	  				break;
+	  			while(s < support.length && support[s] < i)
+	  				candidates[ncand++] = support[s++];
+	  			if(s < support.length && support[s] == i)
+	  				s++;
+	  			candidates[ncand++] = i;
+	  			weights[i] += step * inst.valueSparse(p);
+	  		}
+	  		while(s < support.length)
+	  			candidates[ncand++] = support[s++];
+	  		
+	  		double norm = 0;
+	  		for(int c = 0; c < ncand; c++)
+	  			norm += weights[candidates[c]] * weights[candidates[c]];
+	  		double scale = Math.min(1.0, 1 / (Math.sqrt(lambda) * Math.sqrt(norm)));
 	  		
 	  		int counts = 0;
-	  		Pair[] array = new Pair[weights.numElements()];
-	  		for(int i = 0; i < weights.numElements(); i++){
-	  			array[i] = new Pair(i, weights.getElement(i));
-	  			if(weights.getElement(i) != 0) counts++;
+	  		for(int c = 0; c < ncand; c++) {
+	  			weights[candidates[c]] *= scale;
+	  			if(weights[candidates[c]] != 0) candidates[counts++] = candidates[c];
 	  		}
 	  		
-	  		// Truncate
-	  		if(counts > numFeatures) {
+	  		// Truncate (the largest numFeatures + 1 absolute weights are kept)
+	  		if(counts > numFeatures + 1) {
+	  			Pair[] array = new Pair[counts];
+	  			for(int c = 0; c < counts; c++)
+	  				array[c] = new Pair(candidates[c], weights[candidates[c]]);
 	  			Arrays.sort(array);
-	  			for(int i = numFeatures + 1; i < array.length; i++)
-	  				weights.setElement(array[i].index, 0);
+	  			for(int c = numFeatures + 1; c < array.length; c++)
+	  				weights[array[c].index] = 0;
+	  			counts = 0;
+	  			for(int c = 0; c < array.length; c++) {
+	  				if(weights[array[c].index] != 0) candidates[counts++] = array[c].index;
+	  			}
+	  			Arrays.sort(candidates, 0, counts);
 	  		}
+	  		support = Arrays.copyOf(candidates, counts);
 	  	}
 	  	updated = true;
   }
@@ -246,7 +287,7 @@ public class OFSGDAttributeEval extends ASEvaluation implements
    */
   @Override
   public double evaluateAttribute(int attribute) throws Exception {
-    return weights.getElement(attribute);
+    return weights[attribute];
   }
 
   /**
@@ -312,4 +353,41 @@ public boolean isUpdated() {
 	return updated;
 }
 
-}
\ No newline at end of file
+/**
+ * Weight vector (one double per attribute) and support of the weights.
+ */
+@Override
+public long estimateByteSize() {
+	if(weights == null)
+		return 0;
+	return MemoryEstimate.array(weights.length, 8) + MemoryEstimate.array(support.length, 4);
+}
+
+/**
+ * Weights of the linear model (sparse after truncation).
+ */
+@Override
+public void writeState(CheckpointBuffer out) {
+	out.putInt(numFeatures);
+	out.putBoolean(updated);
+	out.putBoolean(m_missing_merge);
+	out.putBoolean(m_Binarize);
+	out.putDoubles(weights);
+}
+
+@Override
+public void readState(CheckpointBuffer in) {
+	numFeatures = in.getInt();
+	updated = in.getBoolean();
+	m_missing_merge = in.getBoolean();
+	m_Binarize = in.getBoolean();
+	weights = in.getDoubles();
+	int counts = 0;
+	support = new int[weights == null ? 0 : weights.length];
+	for (int i = 0; i < support.length; i++) {
+		if(weights[i] != 0)
+			support[counts++] = i;
+	}
+	support = Arrays.copyOf(support, counts);
+}
+}
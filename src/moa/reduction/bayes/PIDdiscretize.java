@@ -28,7 +28,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
+import moa.reduction.core.CheckpointBuffer;
+import moa.reduction.core.Checkpointable;
+import moa.reduction.core.ColumnarBatch;
 import moa.reduction.core.MOADiscretize;
+import moa.reduction.core.MemoryEstimate;
 import weka.core.ContingencyTables;
 
 import com.yahoo.labs.samoa.instances.Instance;
@@ -44,7 +48,7 @@ import com.yahoo.labs.samoa.instances.Instance;
  * <br/>
  * @author Sergio Ramírez (sramirez at decsai dot ugr dot es)
  */
-public class PIDdiscretize extends MOADiscretize {
+public class PIDdiscretize extends MOADiscretize implements Checkpointable {
 
 	/**
 	 * 
@@ -93,13 +97,6 @@ public class PIDdiscretize extends MOADiscretize {
 	  this.l2UpdateExamples = l2UpdateExamples;
   }
 
-  public Instance applyDiscretization(Instance inst) {
-	  if(m_CutPoints != null)
-		  return convertInstance(inst);
-	  return inst;
-  }
-  
-  
   public void updateEvaluator(Instance instance) {	  
 	  if(m_CutPoints == null) {
 		  initializeLayers(instance);
@@ -107,14 +104,15 @@ public class PIDdiscretize extends MOADiscretize {
 	  
 	  totalCount++;
 		  
-	  for (int i = instance.numAttributes() - 1; i >= 0; i--) {
+	  final int count = totalCount;
+	  forEachAttribute(instance.numAttributes(), i -> {
 		  if ((m_DiscretizeCols.isInRange(i))
 				  && (instance.attribute(i).isNumeric())
 				  && (instance.classIndex() != i)) {
-			  updateLayer1(instance, i);
-    	  
+			  if (!instance.isMissing(i))
+				  updateLayer1(i, instance.value(i), (int) instance.classValue(), count);
 		  }
-	  }
+	  });
     
 	  if(totalCount > 0 && totalCount % l2UpdateExamples == 0){
 		  updateLayer2(instance);
@@ -125,8 +123,45 @@ public class PIDdiscretize extends MOADiscretize {
 		 //writeCPointsToFile(1, 2, totalCount, "PiD");
   }
   
+  /**
+   * Update layer 1 attribute by attribute over the batch. The batch is processed in chunks
+   * delimited by the layer 2 updates, so the result is the same as feeding it row by row.
+   */
+  @Override
+  public void updateEvaluator(ColumnarBatch batch) {
+	  Instance model = batch.instance(0);
+	  if(m_CutPoints == null) {
+		  initializeLayers(model);
+	  }
+	  double[] classes = batch.classValues();
+	  int start = 0;
+	  while(start < batch.size()) {
+		  // Rows until the next multiple of l2UpdateExamples (included)
+		  final int from = start;
+		  final int end = Math.min(batch.size(), start + l2UpdateExamples - totalCount % l2UpdateExamples);
+		  final int first = totalCount;
+		  forEachAttribute(batch.numAttributes(), i -> {
+			  if ((m_DiscretizeCols.isInRange(i))
+					  && (model.attribute(i).isNumeric())
+					  && (batch.classIndex() != i)) {
+				  double[] column = batch.column(i);
+				  for (int r = from; r < end; r++) {
+					  if(!Double.isNaN(column[r]))
+						  updateLayer1(i, column[r], (int) classes[r], first + r - from + 1);
+				  }
+			  }
+		  });
+		  totalCount = first + end - start;
+		  if(totalCount % l2UpdateExamples == 0){
+			  updateLayer2(model);
+			  m_Init = true;
+		  }
+		  start = end;
+	  }
+  }
+  
   private void initializeLayers(Instance inst){
-	  m_DiscretizeCols.setUpper(inst.numAttributes() - 1);
+	  updateRangeUpper(inst.numAttributes() - 1);
 	  step = (max - min) / (double) initialBinsL1;
 	  m_CutPointsL1 = new ArrayList<List<Double>>(inst.numAttributes());
 	  m_Counts = new ArrayList<List<Float>>(inst.numAttributes());
@@ -153,8 +188,9 @@ public class PIDdiscretize extends MOADiscretize {
   
   private void updateLayer2(Instance instance) {
 	// TODO Auto-generated method stub
+	double[][] oldCutPoints = m_CutPoints;
 	m_CutPoints = new double[m_CutPointsL1.size()][];
-    for (int i = instance.numAttributes() - 1; i >= 0; i--) {
+    forEachAttribute(instance.numAttributes(), i -> {
       if ((m_DiscretizeCols.isInRange(i))
         && (instance.attribute(i).isNumeric())) {
     	  double[] attCutPoints = cutPointsForSubset(i, 0, m_CutPointsL1.get(i).size());
@@ -176,7 +212,9 @@ public class PIDdiscretize extends MOADiscretize {
     	  } 
     	  updateDistributionsL2(i, m_CutPoints[i]);
       }
-    }	
+    });
+    if(!Arrays.deepEquals(oldCutPoints, m_CutPoints))
+    	schemeChanged();
   }
   
   
@@ -225,12 +263,11 @@ public class PIDdiscretize extends MOADiscretize {
 			  m_CutPoints[i][j] = m_CutPointsL1.get(i).get(j);
 		  }
 	  }	  
+	  schemeChanged();
   }
 
-  private void updateLayer1(Instance inst, int index) {
+  private void updateLayer1(int index, double x, int classValue, int count) {
 	  int k = 0;
-	  if (!inst.isMissing(index)) {		  
-        double x = inst.value(index);
     	if(x <= m_CutPointsL1.get(index).get(0)){
     		k = 0;
     	} else if(x > m_CutPointsL1.get(index).get(m_CutPointsL1.get(index).size() - 1)) {
@@ -241,12 +278,12 @@ public class PIDdiscretize extends MOADiscretize {
 	        while(x > m_CutPointsL1.get(index).get(k)) k += 1;    	        
     	}
     	m_Counts.get(index).set(k, m_Counts.get(index).get(k) + 1);
-    	float nvalue = m_Distrib.get(index).get(k).getOrDefault((int) inst.classValue(), 0.f) + 1;
-    	m_Distrib.get(index).get(k).put((int) inst.classValue(), nvalue);
+    	float nvalue = m_Distrib.get(index).get(k).getOrDefault(classValue, 0.f) + 1;
+    	m_Distrib.get(index).get(k).put(classValue, nvalue);
     	
     	// Launch the split process
-        double prop = ((double) m_Counts.get(index).get(k)) / totalCount;
-        if(totalCount > initialElements && prop > alpha) {
+        double prop = ((double) m_Counts.get(index).get(k)) / count;
+        if(count > initialElements && prop > alpha) {
         	float tmp = m_Counts.get(index).get(k) / 2;
         	m_Counts.get(index).set(k, tmp);
         	Map<Integer, Float> classDist = m_Distrib.get(index).get(k); 
@@ -271,7 +308,6 @@ public class PIDdiscretize extends MOADiscretize {
         		m_Distrib.get(index).add(k, new HashMap<Integer,Float>(halfDistrib));
         	}
         }	        
-      }
   }
 
   private double[] cutPointsForSubset(int attIndex, int first, int lastPlusOne) {
@@ -411,4 +447,132 @@ public class PIDdiscretize extends MOADiscretize {
 		  return m_Distrib2.get(attI).get(dVal).getOrDefault(classVal, 0.0f).intValue();
 	  return 0;
   }
+  
+  /**
+   * Layer 1 (boxed bounds, counts and class distributions per bin) and layer 2
+   * (class distributions per interval).
+   */
+  @Override
+  public long estimateByteSize() {
+	  long size = super.estimateByteSize();
+	  if(m_CutPointsL1 == null)
+		  return size;
+	  size += 4 * MemoryEstimate.arrayList(m_CutPointsL1.size());
+	  for (int i = 0; i < m_CutPointsL1.size(); i++) {
+		  size += MemoryEstimate.arrayList(m_CutPointsL1.get(i).size()) 
+				  + m_CutPointsL1.get(i).size() * MemoryEstimate.BOXED_DOUBLE;
+		  size += MemoryEstimate.arrayList(m_Counts.get(i).size()) 
+				  + m_Counts.get(i).size() * MemoryEstimate.BOXED_FLOAT;
+		  size += sizeOfDistributions(m_Distrib.get(i)) + sizeOfDistributions(m_Distrib2.get(i));
+	  }
+	  return size;
+  }
+  
+  private static long sizeOfDistributions(List<Map<Integer, Float>> distribs) {
+	  // Class labels are small cached Integers
+	  long size = MemoryEstimate.arrayList(distribs.size());
+	  for (Map<Integer, Float> d : distribs) {
+		  size += MemoryEstimate.hashMap(d.size()) + d.size() * MemoryEstimate.BOXED_FLOAT;
+	  }
+	  return size;
+  }
+  
+  /**
+   * Parameters and both layers (layer 1 bins, counts and class distributions, and layer 2 distributions).
+   */
+  @Override
+  public void writeState(CheckpointBuffer out) {
+	  writeScheme(out);
+	  out.putInt(l2UpdateExamples);
+	  out.putFloat(alpha);
+	  out.putDouble(min);
+	  out.putDouble(max);
+	  out.putInt(initialBinsL1);
+	  out.putInt(initialElements);
+	  out.putInt(totalCount);
+	  out.putDouble(step);
+	  if(m_CutPointsL1 == null) {
+		  out.putInt(-1);
+		  return;
+	  }
+	  out.putInt(m_CutPointsL1.size());
+	  for (int i = 0; i < m_CutPointsL1.size(); i++) {
+		  List<Double> cutPoints = m_CutPointsL1.get(i);
+		  double[] cp = new double[cutPoints.size()];
+		  for (int j = 0; j < cp.length; j++)
+			  cp[j] = cutPoints.get(j);
+		  out.putDoubles(cp);
+		  List<Float> counts = m_Counts.get(i);
+		  float[] c = new float[counts.size()];
+		  for (int j = 0; j < c.length; j++)
+			  c[j] = counts.get(j);
+		  out.putFloats(c);
+		  writeDistributions(out, m_Distrib.get(i));
+		  writeDistributions(out, m_Distrib2.get(i));
+	  }
+  }
+  
+  @Override
+  public void readState(CheckpointBuffer in) {
+	  readScheme(in);
+	  l2UpdateExamples = in.getInt();
+	  alpha = in.getFloat();
+	  min = in.getDouble();
+	  max = in.getDouble();
+	  initialBinsL1 = in.getInt();
+	  initialElements = in.getInt();
+	  totalCount = in.getInt();
+	  step = in.getDouble();
+	  int numAttributes = in.getInt();
+	  if(numAttributes < 0) {
+		  m_CutPointsL1 = null;
+		  m_Counts = null;
+		  m_Distrib = m_Distrib2 = null;
+		  return;
+	  }
+	  m_CutPointsL1 = new ArrayList<List<Double>>(numAttributes);
+	  m_Counts = new ArrayList<List<Float>>(numAttributes);
+	  m_Distrib = new ArrayList<List<Map<Integer, Float>>>(numAttributes);
+	  m_Distrib2 = new ArrayList<List<Map<Integer, Float>>>(numAttributes);
+	  for (int i = 0; i < numAttributes; i++) {
+		  double[] cp = in.getDoubles();
+		  List<Double> cutPoints = new ArrayList<Double>(cp.length);
+		  for (double v : cp)
+			  cutPoints.add(v);
+		  m_CutPointsL1.add(cutPoints);
+		  float[] c = in.getFloats();
+		  List<Float> counts = new ArrayList<Float>(c.length);
+		  for (float v : c)
+			  counts.add(v);
+		  m_Counts.add(counts);
+		  m_Distrib.add(readDistributions(in));
+		  m_Distrib2.add(readDistributions(in));
+	  }
+  }
+  
+  private static void writeDistributions(CheckpointBuffer out, List<Map<Integer, Float>> distribs) {
+	  out.putInt(distribs.size());
+	  for (Map<Integer, Float> d : distribs) {
+		  out.putInt(d.size());
+		  for (Map.Entry<Integer, Float> e : d.entrySet()) {
+			  out.putInt(e.getKey());
+			  out.putFloat(e.getValue());
+		  }
+	  }
+  }
+  
+  private static List<Map<Integer, Float>> readDistributions(CheckpointBuffer in) {
+	  int size = in.getInt();
+	  List<Map<Integer, Float>> distribs = new ArrayList<Map<Integer, Float>>(size);
+	  for (int j = 0; j < size; j++) {
+		  int dsize = in.getInt();
+		  Map<Integer, Float> d = new HashMap<Integer, Float>();
+		  for (int k = 0; k < dsize; k++) {
+			  int cls = in.getInt();
+			  d.put(cls, in.getFloat());
+		  }
+		  distribs.add(d);
+	  }
+	  return distribs;
+  }
 }
@@ -0,0 +1,227 @@
+package moa.reduction.bayes;
+
+import java.util.Arrays;
+
+import moa.reduction.core.MemoryEstimate;
+
+/**
+ * Class histogram of the distinct points in an interval of {@link LOFDiscretizer}. Points
+ * are kept in a sorted float array, and their class counts are packed in a single int array
+ * (numClasses counts per point, in the same order), so a point costs 4 * (numClasses + 1) bytes
+ * instead of a boxed key, a tree entry and an array. Points are located by binary search, in
+ * the order of Float.compare. Positions returned by queries (-1 if there is none) are only
+ * valid until the histogram is modified.
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+public class PointHistogram {
+
+	private final int numClasses;
+	private float[] keys;
+	private int[] counts;
+	private int size = 0;
+
+	public PointHistogram(int numClasses) {
+		this(numClasses, 4);
+	}
+
+	public PointHistogram(int numClasses, int capacity) {
+		this.numClasses = numClasses;
+		this.keys = new float[Math.max(1, capacity)];
+		this.counts = new int[keys.length * numClasses];
+	}
+
+	public PointHistogram(PointHistogram other) {
+		this.numClasses = other.numClasses;
+		this.keys = Arrays.copyOf(other.keys, Math.max(1, other.size));
+		this.counts = Arrays.copyOf(other.counts, keys.length * numClasses);
+		this.size = other.size;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public float keyAt(int pos) {
+		return keys[pos];
+	}
+
+	/**
+	 * @return the packed class counts (those of the point at position p start at offset(p)).
+	 */
+	public int[] counts() {
+		return counts;
+	}
+
+	public int offset(int pos) {
+		return pos * numClasses;
+	}
+
+	/**
+	 * @return the class counts of a point (a copy).
+	 */
+	public int[] countsAt(int pos) {
+		return Arrays.copyOfRange(counts, pos * numClasses, (pos + 1) * numClasses);
+	}
+
+	/**
+	 * Binary search of a point.
+	 * @return position of the point, or -(insertion point + 1) if not present.
+	 */
+	public int indexOf(float key) {
+		int low = 0, high = size - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = Float.compare(keys[mid], key);
+			if(cmp < 0)
+				low = mid + 1;
+			else if(cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
+	}
+
+	/** @return position of the least point greater than or equal to key, or -1 */
+	public int ceiling(float key) {
+		int pos = indexOf(key);
+		if(pos < 0)
+			pos = -pos - 1;
+		return pos < size ? pos : -1;
+	}
+
+	/** @return position of the least point strictly greater than key, or -1 */
+	public int higher(float key) {
+		int pos = indexOf(key);
+		pos = pos < 0 ? -pos - 1 : pos + 1;
+		return pos < size ? pos : -1;
+	}
+
+	/** @return position of the greatest point less than or equal to key, or -1 */
+	public int floor(float key) {
+		int pos = indexOf(key);
+		return pos < 0 ? -pos - 2 : pos;
+	}
+
+	/**
+	 * Get the position of a point, inserting it with zero counts if not present.
+	 */
+	private int insert(float key) {
+		int pos = indexOf(key);
+		if(pos >= 0)
+			return pos;
+		pos = -pos - 1;
+		if(size == keys.length) {
+			int capacity = keys.length + (keys.length >> 1) + 1;
+			keys = Arrays.copyOf(keys, capacity);
+			counts = Arrays.copyOf(counts, capacity * numClasses);
+		}
+		System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+		System.arraycopy(counts, pos * numClasses, counts, (pos + 1) * numClasses, (size - pos) * numClasses);
+		keys[pos] = key;
+		Arrays.fill(counts, pos * numClasses, (pos + 1) * numClasses, 0);
+		size++;
+		return pos;
+	}
+
+	/**
+	 * Add an occurrence of a point.
+	 */
+	public void add(float key, int cls) {
+		int pos = insert(key); // it may replace the arrays
+		counts[pos * numClasses + cls]++;
+	}
+
+	/**
+	 * Add the class counts of a point.
+	 */
+	public void add(float key, int[] cd) {
+		int off = insert(key) * numClasses;
+		for (int i = 0; i < numClasses; i++)
+			counts[off + i] += cd[i];
+	}
+
+	/**
+	 * @return true if all the class counts of the point are zero.
+	 */
+	public boolean isEmptyAt(int pos) {
+		int off = pos * numClasses;
+		for (int i = 0; i < numClasses; i++) {
+			if(counts[off + i] > 0)
+				return false;
+		}
+		return true;
+	}
+
+	public void removeAt(int pos) {
+		System.arraycopy(keys, pos + 1, keys, pos, size - pos - 1);
+		System.arraycopy(counts, (pos + 1) * numClasses, counts, pos * numClasses, (size - pos - 1) * numClasses);
+		size--;
+		// Release space after large removals
+		if(keys.length > 16 && size < keys.length / 4) {
+			int capacity = Math.max(4, size * 2);
+			keys = Arrays.copyOf(keys, capacity);
+			counts = Arrays.copyOf(counts, capacity * numClasses);
+		}
+	}
+
+	/**
+	 * Move the points strictly greater than a key to a new histogram.
+	 * @param key Split point (it stays in this histogram).
+	 * @param moved Class counts of the points moved are added here.
+	 * @return the histogram with the points moved (possibly empty).
+	 */
+	public PointHistogram splitAfter(float key, int[] moved) {
+		int pos = indexOf(key);
+		pos = pos < 0 ? -pos - 1 : pos + 1;
+		int n = size - pos;
+		PointHistogram right = new PointHistogram(numClasses, n);
+		System.arraycopy(keys, pos, right.keys, 0, n);
+		System.arraycopy(counts, pos * numClasses, right.counts, 0, n * numClasses);
+		right.size = n;
+		for (int j = pos * numClasses; j < size * numClasses; j++)
+			moved[j % numClasses] += counts[j];
+		size = pos;
+		return right;
+	}
+
+	/**
+	 * Add all the points of another histogram to this one (both are merged in order).
+	 */
+	public void merge(PointHistogram other) {
+		float[] nkeys = new float[size + other.size];
+		int[] ncounts = new int[nkeys.length * numClasses];
+		int i = 0, j = 0, k = 0;
+		while(i < size || j < other.size) {
+			int cmp = i == size ? 1 : j == other.size ? -1 : Float.compare(keys[i], other.keys[j]);
+			if(cmp <= 0) {
+				nkeys[k] = keys[i];
+				System.arraycopy(counts, i * numClasses, ncounts, k * numClasses, numClasses);
+				i++;
+			}
+			if(cmp >= 0) {
+				nkeys[k] = other.keys[j];
+				for (int c = 0; c < numClasses; c++)
+					ncounts[k * numClasses + c] += other.counts[j * numClasses + c];
+				j++;
+			}
+			k++;
+		}
+		keys = k == nkeys.length ? nkeys : Arrays.copyOf(nkeys, Math.max(1, k));
+		counts = k == nkeys.length ? ncounts : Arrays.copyOf(ncounts, keys.length * numClasses);
+		size = k;
+	}
+
+	/**
+	 * @return estimated size in bytes.
+	 */
+	public long estimateByteSize() {
+		return MemoryEstimate.align(MemoryEstimate.OBJECT_HEADER + 2 * MemoryEstimate.REFERENCE + 8)
+				+ MemoryEstimate.array(keys.length, 4) + MemoryEstimate.array(counts.length, 4);
+	}
+}
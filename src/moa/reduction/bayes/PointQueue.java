@@ -0,0 +1,104 @@
+package moa.reduction.bayes;
+
+import moa.reduction.core.MemoryEstimate;
+
+/**
+ * FIFO queue of the points of an attribute in {@link LOFDiscretizer}, in arrival order. It is
+ * a ring buffer of float values plus short class indices, so a point costs 6 bytes instead of
+ * a list node, a tuple and a boxed value, and any point can be accessed by its position (0 is
+ * the oldest one) in constant time. The buffer grows when it is full and shrinks after large
+ * removals.
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+public class PointQueue {
+
+	private float[] values;
+	private short[] classes;
+	private int head = 0, size = 0;
+
+	public PointQueue() {
+		this(16);
+	}
+
+	public PointQueue(int capacity) {
+		values = new float[Math.max(1, capacity)];
+		classes = new short[values.length];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @param i Position in arrival order (0 is the oldest point).
+	 */
+	public float value(int i) {
+		return values[(head + i) % values.length];
+	}
+
+	/**
+	 * @param i Position in arrival order (0 is the oldest point).
+	 */
+	public int classAt(int i) {
+		return classes[(head + i) % values.length];
+	}
+
+	/**
+	 * Add a point at the end of the queue.
+	 * @param value Value of the point.
+	 * @param cls Class index (at most Short.MAX_VALUE).
+	 */
+	public void add(float value, int cls) {
+		if(size == values.length)
+			resize(values.length * 2);
+		int pos = (head + size++) % values.length;
+		values[pos] = value;
+		classes[pos] = (short) cls;
+	}
+
+	/**
+	 * Remove the oldest point (read it before with value(0) and classAt(0)).
+	 */
+	public void removeFirst() {
+		head = (head + 1) % values.length;
+		size--;
+		if(values.length > 1024 && size < values.length / 4)
+			resize(Math.max(1024, size * 2));
+	}
+
+	private void resize(int capacity) {
+		float[] nvalues = new float[capacity];
+		short[] nclasses = new short[capacity];
+		int first = Math.min(size, values.length - head);
+		System.arraycopy(values, head, nvalues, 0, first);
+		System.arraycopy(values, 0, nvalues, first, size - first);
+		System.arraycopy(classes, head, nclasses, 0, first);
+		System.arraycopy(classes, 0, nclasses, first, size - first);
+		values = nvalues;
+		classes = nclasses;
+		head = 0;
+	}
+
+	/**
+	 * @return the class indices in arrival order (a new array).
+	 */
+	public int[] toClassArray() {
+		int[] a = new int[size];
+		for (int i = 0; i < size; i++)
+			a[i] = classes[(head + i) % classes.length];
+		return a;
+	}
+
+	/**
+	 * @return estimated size in bytes.
+	 */
+	public long estimateByteSize() {
+		return MemoryEstimate.align(MemoryEstimate.OBJECT_HEADER + 2 * MemoryEstimate.REFERENCE + 8)
+				+ MemoryEstimate.array(values.length, 4) + MemoryEstimate.array(classes.length, 2);
+	}
+}
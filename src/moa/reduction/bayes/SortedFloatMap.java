@@ -0,0 +1,156 @@
+package moa.reduction.bayes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import moa.reduction.core.MemoryEstimate;
+
+/**
+ * Map from float keys to objects backed by two parallel sorted arrays, used by
+ * {@link LOFDiscretizer} to index the intervals of an attribute by their end. It supports
+ * the navigation queries of a TreeMap (ceiling, lower, higher) by binary search, without
+ * boxed keys or tree entries. Keys are ordered as in Float.compare, like Float keys in a
+ * TreeMap. Queries return positions (-1 if there is none), which are only valid until
+ * the map is modified.
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+public class SortedFloatMap<V> {
+
+	private float[] keys;
+	private Object[] values;
+	private int size = 0;
+
+	public SortedFloatMap() {
+		this(8);
+	}
+
+	public SortedFloatMap(int capacity) {
+		keys = new float[Math.max(1, capacity)];
+		values = new Object[keys.length];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public float keyAt(int pos) {
+		return keys[pos];
+	}
+
+	@SuppressWarnings("unchecked")
+	public V valueAt(int pos) {
+		return (V) values[pos];
+	}
+
+	/**
+	 * Binary search of a key.
+	 * @return position of the key, or -(insertion point + 1) if not present.
+	 */
+	private int search(float key) {
+		int low = 0, high = size - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			int cmp = Float.compare(keys[mid], key);
+			if(cmp < 0)
+				low = mid + 1;
+			else if(cmp > 0)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
+	}
+
+	/** @return position of the least key greater than or equal to key, or -1 */
+	public int ceiling(float key) {
+		int pos = search(key);
+		if(pos < 0)
+			pos = -pos - 1;
+		return pos < size ? pos : -1;
+	}
+
+	/** @return position of the greatest key strictly less than key, or -1 */
+	public int lower(float key) {
+		int pos = search(key);
+		return (pos < 0 ? -pos - 1 : pos) - 1;
+	}
+
+	/** @return position of the least key strictly greater than key, or -1 */
+	public int higher(float key) {
+		int pos = search(key);
+		pos = pos < 0 ? -pos - 1 : pos + 1;
+		return pos < size ? pos : -1;
+	}
+
+	public V get(float key) {
+		int pos = search(key);
+		return pos >= 0 ? valueAt(pos) : null;
+	}
+
+	/**
+	 * Associate a value with a key, replacing the previous value if the key is present.
+	 * @return the previous value, or null.
+	 */
+	public V put(float key, V value) {
+		int pos = search(key);
+		if(pos >= 0) {
+			V old = valueAt(pos);
+			values[pos] = value;
+			return old;
+		}
+		pos = -pos - 1;
+		if(size == keys.length) {
+			int capacity = keys.length + (keys.length >> 1) + 1;
+			keys = Arrays.copyOf(keys, capacity);
+			values = Arrays.copyOf(values, capacity);
+		}
+		System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+		System.arraycopy(values, pos, values, pos + 1, size - pos);
+		keys[pos] = key;
+		values[pos] = value;
+		size++;
+		return null;
+	}
+
+	/**
+	 * @return the value removed, or null if the key is not present.
+	 */
+	public V remove(float key) {
+		int pos = search(key);
+		if(pos < 0)
+			return null;
+		V old = valueAt(pos);
+		removeAt(pos);
+		return old;
+	}
+
+	public void removeAt(int pos) {
+		System.arraycopy(keys, pos + 1, keys, pos, size - pos - 1);
+		System.arraycopy(values, pos + 1, values, pos, size - pos - 1);
+		values[--size] = null;
+	}
+
+	/**
+	 * @return the values in key order (a new list).
+	 */
+	public List<V> values() {
+		List<V> list = new ArrayList<V>(size);
+		for (int i = 0; i < size; i++)
+			list.add(valueAt(i));
+		return list;
+	}
+
+	/**
+	 * @return estimated size in bytes of the arrays (values not included).
+	 */
+	public long estimateByteSize() {
+		return MemoryEstimate.align(MemoryEstimate.OBJECT_HEADER + 2 * MemoryEstimate.REFERENCE + 4)
+				+ MemoryEstimate.array(keys.length, 4) + MemoryEstimate.array(values.length, MemoryEstimate.REFERENCE);
+	}
+}
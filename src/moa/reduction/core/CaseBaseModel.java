@@ -0,0 +1,17 @@
+package moa.reduction.core;
+
+/**
+ * Classifiers that keep (a selection of) the past instances as their model, such as
+ * the case-base maintenance methods and FISH. Lets tools follow the size of the model
+ * without computing the serialized size of the whole classifier.
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+public interface CaseBaseModel {
+
+	/**
+	 * @return Number of instances currently stored by the model (0 before training).
+	 */
+	public int getCaseBaseSize();
+
+}
@@ -0,0 +1,306 @@
+package moa.reduction.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Byte buffer used to write and read checkpoints (see {@link PipelineCheckpoint}). It grows
+ * as needed when writing. Values are little-endian, arrays and strings are prefixed with
+ * their length (-1 for null), and primitive arrays are copied in bulk. Objects without a
+ * primitive form are written with Java serialization (I/O errors are thrown unchecked).
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+public class CheckpointBuffer {
+
+	private ByteBuffer buffer;
+
+	/**
+	 * Create an empty buffer to write a checkpoint.
+	 * @param capacity Initial capacity in bytes.
+	 */
+	public CheckpointBuffer(int capacity) {
+		this.buffer = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Wrap the content of a checkpoint to read it (from its current position).
+	 * @param buffer Content of the checkpoint.
+	 */
+	public CheckpointBuffer(ByteBuffer buffer) {
+		this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * @return The underlying buffer (its position is the end of the data written so far).
+	 */
+	public ByteBuffer buffer() {
+		return buffer;
+	}
+
+	private void ensure(long bytes) {
+		if(buffer.remaining() < bytes) {
+			long capacity = Math.max(buffer.capacity() * 2L, buffer.position() + bytes);
+			if(capacity > Integer.MAX_VALUE - 8)
+				throw new IllegalStateException("Checkpoint too large: " + capacity + " bytes");
+			ByteBuffer nbuffer = ByteBuffer.allocate((int) capacity).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.flip();
+			nbuffer.put(buffer);
+			buffer = nbuffer;
+		}
+	}
+
+	public void putByte(byte v) {
+		ensure(1);
+		buffer.put(v);
+	}
+
+	public void putBoolean(boolean v) {
+		putByte(v ? (byte) 1 : (byte) 0);
+	}
+
+	public void putShort(short v) {
+		ensure(2);
+		buffer.putShort(v);
+	}
+
+	public void putInt(int v) {
+		ensure(4);
+		buffer.putInt(v);
+	}
+
+	public void putLong(long v) {
+		ensure(8);
+		buffer.putLong(v);
+	}
+
+	public void putFloat(float v) {
+		ensure(4);
+		buffer.putFloat(v);
+	}
+
+	public void putDouble(double v) {
+		ensure(8);
+		buffer.putDouble(v);
+	}
+
+	public void putBytes(byte[] a) {
+		if(a == null) {
+			putInt(-1);
+			return;
+		}
+		ensure(4 + (long) a.length);
+		buffer.putInt(a.length);
+		buffer.put(a);
+	}
+
+	public void putInts(int[] a) {
+		if(a == null) {
+			putInt(-1);
+			return;
+		}
+		ensure(4 + 4L * a.length);
+		buffer.putInt(a.length);
+		buffer.asIntBuffer().put(a);
+		buffer.position(buffer.position() + 4 * a.length);
+	}
+
+	public void putFloats(float[] a) {
+		if(a == null) {
+			putInt(-1);
+			return;
+		}
+		ensure(4 + 4L * a.length);
+		buffer.putInt(a.length);
+		buffer.asFloatBuffer().put(a);
+		buffer.position(buffer.position() + 4 * a.length);
+	}
+
+	public void putDoubles(double[] a) {
+		if(a == null) {
+			putInt(-1);
+			return;
+		}
+		ensure(4 + 8L * a.length);
+		buffer.putInt(a.length);
+		buffer.asDoubleBuffer().put(a);
+		buffer.position(buffer.position() + 8 * a.length);
+	}
+
+	public void putDoubles(double[][] a) {
+		if(a == null) {
+			putInt(-1);
+			return;
+		}
+		putInt(a.length);
+		for (double[] row : a)
+			putDoubles(row);
+	}
+
+	public void putInts(int[][] a) {
+		if(a == null) {
+			putInt(-1);
+			return;
+		}
+		putInt(a.length);
+		for (int[] row : a)
+			putInts(row);
+	}
+
+	public void putString(String s) {
+		putBytes(s == null ? null : s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public void putStrings(String[][] a) {
+		if(a == null) {
+			putInt(-1);
+			return;
+		}
+		putInt(a.length);
+		for (String[] row : a) {
+			if(row == null) {
+				putInt(-1);
+			} else {
+				putInt(row.length);
+				for (String s : row)
+					putString(s);
+			}
+		}
+	}
+
+	public void putObject(Object o) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(o);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		putBytes(bytes.toByteArray());
+	}
+
+	public byte getByte() {
+		return buffer.get();
+	}
+
+	public boolean getBoolean() {
+		return buffer.get() != 0;
+	}
+
+	public short getShort() {
+		return buffer.getShort();
+	}
+
+	public int getInt() {
+		return buffer.getInt();
+	}
+
+	public long getLong() {
+		return buffer.getLong();
+	}
+
+	public float getFloat() {
+		return buffer.getFloat();
+	}
+
+	public double getDouble() {
+		return buffer.getDouble();
+	}
+
+	public byte[] getBytes() {
+		int length = buffer.getInt();
+		if(length < 0)
+			return null;
+		byte[] a = new byte[length];
+		buffer.get(a);
+		return a;
+	}
+
+	public int[] getInts() {
+		int length = buffer.getInt();
+		if(length < 0)
+			return null;
+		int[] a = new int[length];
+		buffer.asIntBuffer().get(a);
+		buffer.position(buffer.position() + 4 * length);
+		return a;
+	}
+
+	public float[] getFloats() {
+		int length = buffer.getInt();
+		if(length < 0)
+			return null;
+		float[] a = new float[length];
+		buffer.asFloatBuffer().get(a);
+		buffer.position(buffer.position() + 4 * length);
+		return a;
+	}
+
+	public double[] getDoubles() {
+		int length = buffer.getInt();
+		if(length < 0)
+			return null;
+		double[] a = new double[length];
+		buffer.asDoubleBuffer().get(a);
+		buffer.position(buffer.position() + 8 * length);
+		return a;
+	}
+
+	public double[][] getDoubles2() {
+		int length = buffer.getInt();
+		if(length < 0)
+			return null;
+		double[][] a = new double[length][];
+		for (int i = 0; i < length; i++)
+			a[i] = getDoubles();
+		return a;
+	}
+
+	public int[][] getInts2() {
+		int length = buffer.getInt();
+		if(length < 0)
+			return null;
+		int[][] a = new int[length][];
+		for (int i = 0; i < length; i++)
+			a[i] = getInts();
+		return a;
+	}
+
+	public String getString() {
+		byte[] bytes = getBytes();
+		return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public String[][] getStrings2() {
+		int length = buffer.getInt();
+		if(length < 0)
+			return null;
+		String[][] a = new String[length][];
+		for (int i = 0; i < length; i++) {
+			int rlength = buffer.getInt();
+			if(rlength >= 0) {
+				a[i] = new String[rlength];
+				for (int j = 0; j < rlength; j++)
+					a[i][j] = getString();
+			}
+		}
+		return a;
+	}
+
+	public Object getObject() {
+		byte[] bytes = getBytes();
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return in.readObject();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (ClassNotFoundException e) {
+			throw new UncheckedIOException(new IOException(e));
+		}
+	}
+}
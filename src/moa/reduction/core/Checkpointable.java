@@ -0,0 +1,25 @@
+package moa.reduction.core;
+
+/**
+ * Stages of the pipeline (discretizers and feature evaluators) that can write their state
+ * into a compact binary checkpoint, made of primitive values and arrays, and restore it later
+ * (see {@link PipelineCheckpoint}). Stages that do not implement it are checkpointed with
+ * Java serialization.
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+public interface Checkpointable {
+
+	/**
+	 * Write the parameters and the statistics of the stage.
+	 * @param out Checkpoint buffer.
+	 */
+	public void writeState(CheckpointBuffer out);
+
+	/**
+	 * Restore the state written by {@link #writeState(CheckpointBuffer)}, replacing the current one.
+	 * @param in Checkpoint buffer, positioned at the start of the state.
+	 */
+	public void readState(CheckpointBuffer in);
+
+}
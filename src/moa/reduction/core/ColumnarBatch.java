@@ -0,0 +1,135 @@
+package moa.reduction.core;
+
+import java.util.List;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+import com.yahoo.labs.samoa.instances.SparseInstance;
+
+/**
+ * Mini-batch of instances transposed into one primitive column per attribute, so that
+ * discretizers and attribute evaluators can be updated attribute by attribute over the whole
+ * batch. Missing values are stored as NaN, and implicit (sparse) values as zero.
+ * All instances must share the same header.
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+public class ColumnarBatch {
+
+	/** Instances in the batch (row view) */
+	protected final Instance[] instances;
+
+	/** Values by attribute: columns[attribute][row] */
+	protected final double[][] columns;
+
+	protected final double[] classValues;
+	protected final double[] weights;
+
+	/** Whether any instance in the batch is sparse */
+	protected final boolean sparse;
+
+	/**
+	 * Transpose a list of instances into a batch.
+	 * @param instances Instances to include (at least one).
+	 */
+	public ColumnarBatch(List<Instance> instances) {
+		this(instances.toArray(new Instance[instances.size()]));
+	}
+
+	/**
+	 * Transpose an array of instances into a batch.
+	 * @param instances Instances to include (at least one).
+	 */
+	public ColumnarBatch(Instance[] instances) {
+		if(instances.length == 0)
+			throw new IllegalArgumentException("Empty batch");
+		this.instances = instances;
+		int numAttributes = instances[0].numAttributes();
+		columns = new double[numAttributes][instances.length];
+		classValues = new double[instances.length];
+		weights = new double[instances.length];
+		boolean anySparse = false;
+		for (int r = 0; r < instances.length; r++) {
+			Instance inst = instances[r];
+			if(inst instanceof SparseInstance) {
+				anySparse = true;
+				for (int p = 0; p < inst.numValues(); p++) {
+					columns[inst.index(p)][r] = inst.valueSparse(p);
+				}
+			} else {
+				for (int i = 0; i < numAttributes; i++) {
+					columns[i][r] = inst.value(i);
+				}
+			}
+			classValues[r] = inst.classValue();
+			weights[r] = inst.weight();
+		}
+		this.sparse = anySparse;
+	}
+
+	/**
+	 * @return Number of instances in the batch.
+	 */
+	public int size() {
+		return instances.length;
+	}
+
+	/**
+	 * @return Number of attributes (including the class).
+	 */
+	public int numAttributes() {
+		return columns.length;
+	}
+
+	/**
+	 * @return Index of the class attribute.
+	 */
+	public int classIndex() {
+		return instances[0].classIndex();
+	}
+
+	/**
+	 * @return Header shared by all the instances.
+	 */
+	public Instances header() {
+		return instances[0].dataset();
+	}
+
+	/**
+	 * Values of an attribute for all the instances (not to be modified).
+	 * @param attIndex Attribute index.
+	 * @return Column of values, NaN if missing.
+	 */
+	public double[] column(int attIndex) {
+		return columns[attIndex];
+	}
+
+	/**
+	 * @return Class values for all the instances (not to be modified).
+	 */
+	public double[] classValues() {
+		return classValues;
+	}
+
+	/**
+	 * @return Weights for all the instances (not to be modified).
+	 */
+	public double[] weights() {
+		return weights;
+	}
+
+	/**
+	 * @param row Row index.
+	 * @return Original instance in this row.
+	 */
+	public Instance instance(int row) {
+		return instances[row];
+	}
+
+	/**
+	 * @return True if any instance is sparse (columns include implicit zeros).
+	 */
+	public boolean isSparse() {
+		return sparse;
+	}
+}
@@ -0,0 +1,125 @@
+package moa.reduction.core;
+
+/**
+ * Compiled form of the cut points of a single attribute, used to locate the bin of a value.
+ * Cut points are rounded once (instead of on every comparison) and numeric labels are parsed
+ * once, so that each value is mapped with a binary search over a primitive array.
+ *
+ * <p>A lookup is tied to the cut point and label arrays it was built from: discretizers
+ * replace those arrays (never modify them in place) when the scheme changes, so a lookup
+ * is stale as soon as {@link #isBuiltFrom(double[], String[])} returns false.</p>
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+public class CutPointLookup {
+
+	/** Arrays this lookup was compiled from */
+	protected final double[] source;
+	protected final String[] sourceLabels;
+
+	/** Rounded cut points (6 decimals, as float) */
+	protected final float[] points;
+
+	/** Value assigned to each bin, or null if bins are identified by their index */
+	protected final double[] binValues;
+
+	/** Whether points are sorted, in which case binary search can be applied */
+	protected final boolean sorted;
+
+	/** Discretized value for zero (implicit values of sparse instances) */
+	protected final double zeroValue;
+
+	/**
+	 * Compile a set of cut points.
+	 * @param cutPoints Cut points of the attribute (not null).
+	 * @param labels Labels for each interval (may be null).
+	 */
+	public CutPointLookup(double[] cutPoints, String[] labels) {
+		this.source = cutPoints;
+		this.sourceLabels = labels;
+		this.points = new float[cutPoints.length];
+		boolean ordered = true;
+		for (int j = 0; j < cutPoints.length; j++) {
+			points[j] = (float)(Math.round((double) cutPoints[j] *1000000.0) / 1000000.0);
+			if(points[j] != points[j] || (j > 0 && points[j] < points[j - 1]))
+				ordered = false;
+		}
+		this.sorted = ordered;
+		if(labels != null) {
+			// Bins without label are mapped to zero
+			binValues = new double[cutPoints.length + 1];
+			for (int j = 0; j < labels.length && j < binValues.length; j++) {
+				binValues[j] = Float.parseFloat(labels[j]);
+			}
+		} else {
+			binValues = null;
+		}
+		this.zeroValue = value(0f);
+	}
+
+	/**
+	 * Check whether this lookup reflects the given cut points and labels.
+	 * @param cutPoints Current cut points of the attribute.
+	 * @param labels Current labels of the attribute.
+	 * @return True if the lookup was compiled from these same arrays.
+	 */
+	public boolean isBuiltFrom(double[] cutPoints, String[] labels) {
+		return source == cutPoints && sourceLabels == labels;
+	}
+
+	/**
+	 * Find the bin for a given value, i.e., the first cut point greater or equal
+	 * than the value (or the number of cut points if there is none).
+	 * @param value Value to locate.
+	 * @return Bin index.
+	 */
+	public int bin(float value) {
+		if(!sorted) {
+			int j;
+			for (j = 0; j < points.length; j++) {
+				if (value <= points[j]) {
+					break;
+				}
+			}
+			return j;
+		}
+		if(value != value) // NaN is never lower than a cut point
+			return points.length;
+		int low = 0, high = points.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(points[mid] < value)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Discretized value for a given raw value: the label of its bin
+	 * if labels are defined, or the bin index otherwise.
+	 * @param value Raw value.
+	 * @return Discretized value.
+	 */
+	public double value(float value) {
+		int j = bin(value);
+		if(binValues != null)
+			return binValues[j];
+		return j;
+	}
+
+	/**
+	 * @return Discretized value for zero, precomputed.
+	 */
+	public double zeroValue() {
+		return zeroValue;
+	}
+
+	/**
+	 * @return Number of bins defined by the cut points.
+	 */
+	public int numBins() {
+		return points.length + 1;
+	}
+}
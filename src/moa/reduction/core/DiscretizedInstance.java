@@ -0,0 +1,536 @@
+package moa.reduction.core;
+
+import java.util.Arrays;
+
+import com.yahoo.labs.samoa.instances.Attribute;
+import com.yahoo.labs.samoa.instances.DenseInstance;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+import com.yahoo.labs.samoa.instances.SparseInstance;
+
+/**
+ * Lazy view of a discretized instance. Values are mapped to their bins only when they are
+ * read (and memorized for further accesses), so the cost of discretization depends on the
+ * number of attributes consumed by the learner instead of on the width of the schema.
+ * The original instance is never modified: values set on the view are kept in the view.
+ *
+ * <p>The view reads an immutable snapshot of the scheme, so it is not affected by later
+ * updates of the discretizer. {@link #copy()} returns a materialized instance. Learners that
+ * edit the structure of their input (delete, insert or add sparse values) get the view
+ * materialized first: from then on, it delegates to this materialized copy.</p>
+ *
+ * <p>Views of sparse instances are sparse too: they store the values of the source plus
+ * those of the attributes whose zero is mapped to another bin (precomputed in the snapshot),
+ * so reading all their values costs the number of stored values, not the number of
+ * attributes.</p>
+ *
+ * <p>A view can also hide the attributes deselected by a {@link FeatureProjection}: they are
+ * read as missing, and the rest are mapped as usual, so the values are never copied. Raw
+ * instances are masked with a view without scheme, which reads their values unchanged.</p>
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+public class DiscretizedInstance implements Instance {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Original (raw) instance */
+	protected final Instance source;
+
+	/** Scheme that maps raw values to bins (null to read them unchanged) */
+	protected final SchemeSnapshot scheme;
+
+	/** Discretized header */
+	protected Instances header;
+
+	protected double weight;
+
+	/** Values already mapped or set (memo), by attribute or by position if sparse */
+	protected double[] values = null;
+	protected boolean[] known = null;
+
+	/** Attributes with a stored value (ascending) for sparse sources, null for dense ones */
+	protected int[] indices = null;
+
+	/** Materialized copy, once the structure of the view has been edited (null before) */
+	protected Instance edited = null;
+
+	/** Attributes kept (the rest are read as missing), null to keep all */
+	protected boolean[] mask = null;
+
+	/** Whether values, weight or structure have been changed on the view */
+	protected boolean modified = false;
+
+	/**
+	 * Create a discretized view.
+	 * @param source Raw instance.
+	 * @param scheme Discretization scheme to use.
+	 */
+	public DiscretizedInstance(Instance source, SchemeSnapshot scheme) {
+		this.source = source;
+		this.scheme = scheme;
+		this.header = scheme.getHeader();
+		this.weight = source.weight();
+		if(source instanceof SparseInstance)
+			this.indices = mergeIndices(source, scheme.getShiftedZeros());
+	}
+
+	/**
+	 * Create a view of a raw instance, without scheme, that hides the attributes deselected
+	 * by a projection.
+	 * @param source Raw instance.
+	 * @param projection Selection of attributes to keep.
+	 */
+	public DiscretizedInstance(Instance source, FeatureProjection projection) {
+		this.source = source;
+		this.scheme = null;
+		this.header = source.dataset();
+		this.weight = source.weight();
+		this.mask = projection.getMask();
+		// Hidden attributes are stored as missing values in sparse views
+		if(source instanceof SparseInstance)
+			this.indices = mergeIndices(source, projection.getHidden());
+	}
+
+	/**
+	 * Create a view of the same instance that hides the attributes deselected by a projection.
+	 * The original view must not have been modified (see {@link #isModified()}).
+	 * @param view Discretized view.
+	 * @param projection Selection of attributes to keep.
+	 */
+	public DiscretizedInstance(DiscretizedInstance view, FeatureProjection projection) {
+		this.source = view.source;
+		this.scheme = view.scheme;
+		this.header = view.header;
+		this.weight = view.weight;
+		boolean[] keep = projection.getMask();
+		if(view.mask != null) {
+			keep = keep.clone();
+			for (int i = 0; i < keep.length; i++)
+				keep[i] &= view.mask[i];
+		}
+		this.mask = keep;
+		// Hidden attributes are stored as missing values in sparse views
+		if(view.indices != null)
+			this.indices = union(view.indices, projection.getHidden());
+	}
+
+	/**
+	 * Merge the stored attributes of a sparse instance with other attributes (ascending).
+	 */
+	private static int[] mergeIndices(Instance source, int[] shifted) {
+		int n = source.numValues();
+		int[] merged = new int[n + shifted.length];
+		int i = 0, j = 0, k = 0;
+		while(i < n || j < shifted.length) {
+			int a = i < n ? source.index(i) : Integer.MAX_VALUE;
+			int b = j < shifted.length ? shifted[j] : Integer.MAX_VALUE;
+			if(a <= b) {
+				merged[k++] = a;
+				i++;
+				if(a == b)
+					j++;
+			} else {
+				merged[k++] = b;
+				j++;
+			}
+		}
+		return k == merged.length ? merged : Arrays.copyOf(merged, k);
+	}
+
+	/**
+	 * Union of two ascending arrays of indices.
+	 */
+	private static int[] union(int[] a, int[] b) {
+		int[] merged = new int[a.length + b.length];
+		int i = 0, j = 0, k = 0;
+		while(i < a.length || j < b.length) {
+			if(j == b.length || (i < a.length && a[i] < b[j]))
+				merged[k++] = a[i++];
+			else if(i == a.length || b[j] < a[i])
+				merged[k++] = b[j++];
+			else {
+				merged[k++] = a[i++];
+				j++;
+			}
+		}
+		return k == merged.length ? merged : Arrays.copyOf(merged, k);
+	}
+
+	/**
+	 * @return True if values, weight or structure have been changed on this view.
+	 */
+	public boolean isModified() {
+		return modified;
+	}
+
+	/**
+	 * @return The raw instance behind this view.
+	 */
+	public Instance getSource() {
+		return source;
+	}
+
+	/**
+	 * @return The scheme snapshot used by this view (null if values are not discretized).
+	 */
+	public SchemeSnapshot getScheme() {
+		return scheme;
+	}
+
+	/**
+	 * Value of an attribute of the source, mapped by the scheme if any.
+	 */
+	private double mapValue(int attIndex) {
+		return scheme == null ? source.value(attIndex) : scheme.discretizeValue(source, attIndex);
+	}
+
+	/**
+	 * Materialize the view before editing its structure.
+	 */
+	private Instance materialize() {
+		modified = true;
+		if(edited == null)
+			edited = copy();
+		return edited;
+	}
+
+	@Override
+	public double value(int attIndex) {
+		if(edited != null)
+			return edited.value(attIndex);
+		if(mask != null && !mask[attIndex])
+			return Double.NaN;
+		if(indices != null) {
+			int p = Arrays.binarySearch(indices, attIndex);
+			return p >= 0 ? valueSparse(p) : 0;
+		}
+		if(scheme == null) {
+			// Nothing to memorize, only values set on the view
+			return known != null && known[attIndex] ? values[attIndex] : source.value(attIndex);
+		}
+		if(known == null) {
+			values = new double[source.numAttributes()];
+			known = new boolean[values.length];
+		}
+		if(!known[attIndex]) {
+			values[attIndex] = mapValue(attIndex);
+			known[attIndex] = true;
+		}
+		return values[attIndex];
+	}
+
+	@Override
+	public void setValue(int attIndex, double value) {
+		modified = true;
+		if(edited != null) {
+			edited.setValue(attIndex, value);
+			return;
+		}
+		if(mask != null && !mask[attIndex]) {
+			// The mask may be shared with the projection
+			mask = mask.clone();
+			mask[attIndex] = true;
+		}
+		if(indices != null) {
+			int p = Arrays.binarySearch(indices, attIndex);
+			if(p < 0)
+				p = insertIndex(-p - 1, attIndex);
+			allocateSparseMemo();
+			values[p] = value;
+			known[p] = true;
+			return;
+		}
+		if(known == null) {
+			values = new double[source.numAttributes()];
+			known = new boolean[values.length];
+		}
+		values[attIndex] = value;
+		known[attIndex] = true;
+	}
+
+	/**
+	 * Add a stored attribute to a sparse view (a value set on an implicit zero).
+	 * @return Position of the new attribute.
+	 */
+	private int insertIndex(int pos, int attIndex) {
+		allocateSparseMemo();
+		int n = indices.length;
+		int[] nindices = new int[n + 1];
+		double[] nvalues = new double[n + 1];
+		boolean[] nknown = new boolean[n + 1];
+		System.arraycopy(indices, 0, nindices, 0, pos);
+		System.arraycopy(values, 0, nvalues, 0, pos);
+		System.arraycopy(known, 0, nknown, 0, pos);
+		System.arraycopy(indices, pos, nindices, pos + 1, n - pos);
+		System.arraycopy(values, pos, nvalues, pos + 1, n - pos);
+		System.arraycopy(known, pos, nknown, pos + 1, n - pos);
+		nindices[pos] = attIndex;
+		indices = nindices;
+		values = nvalues;
+		known = nknown;
+		return pos;
+	}
+
+	private void allocateSparseMemo() {
+		if(known == null) {
+			values = new double[indices.length];
+			known = new boolean[indices.length];
+		}
+	}
+
+	@Override
+	public double[] toDoubleArray() {
+		if(edited != null)
+			return edited.toDoubleArray();
+		double[] vals = new double[numAttributes()];
+		if(indices != null) {
+			for (int p = 0; p < indices.length; p++) {
+				vals[indices[p]] = valueSparse(p);
+			}
+			return vals;
+		}
+		for (int i = 0; i < vals.length; i++) {
+			vals[i] = value(i);
+		}
+		return vals;
+	}
+
+	@Override
+	public Instance copy() {
+		if(edited != null)
+			return edited.copy();
+		Instance outI = null;
+		if (indices != null) {
+			double[] vals = new double[indices.length];
+			for (int p = 0; p < vals.length; p++) {
+				vals[p] = valueSparse(p);
+			}
+			outI = new SparseInstance(weight, vals, indices.clone(), numAttributes());
+		} else {
+			outI = new DenseInstance(weight, toDoubleArray());
+		}
+		outI.setDataset(header);
+		return outI;
+	}
+
+	@Override
+	public double weight() {
+		return weight;
+	}
+
+	@Override
+	public void setWeight(double weight) {
+		modified = true;
+		this.weight = weight;
+		if(edited != null)
+			edited.setWeight(weight);
+	}
+
+	@Override
+	public Attribute attribute(int index) {
+		return header.attribute(index);
+	}
+
+	@Override
+	public int indexOfAttribute(Attribute attribute) {
+		for (int i = 0; i < header.numAttributes(); i++) {
+			if(header.attribute(i) == attribute)
+				return i;
+		}
+		return -1;
+	}
+
+	@Override
+	public void deleteAttributeAt(int i) {
+		materialize().deleteAttributeAt(i);
+	}
+
+	@Override
+	public void insertAttributeAt(int i) {
+		materialize().insertAttributeAt(i);
+	}
+
+	@Override
+	public int numAttributes() {
+		return edited != null ? edited.numAttributes() : source.numAttributes();
+	}
+
+	@Override
+	public void addSparseValues(int[] indexValues, double[] attributeValues, int numberAttributes) {
+		materialize().addSparseValues(indexValues, attributeValues, numberAttributes);
+	}
+
+	@Override
+	public int numValues() {
+		if(edited != null)
+			return edited.numValues();
+		return indices != null ? indices.length : numAttributes();
+	}
+
+	@Override
+	public int index(int i) {
+		if(edited != null)
+			return edited.index(i);
+		return indices != null ? indices[i] : i;
+	}
+
+	@Override
+	public double valueSparse(int i) {
+		if(edited != null)
+			return edited.valueSparse(i);
+		if(indices == null)
+			return value(i);
+		if(mask != null && !mask[indices[i]])
+			return Double.NaN;
+		if(scheme == null && known == null)
+			return source.value(indices[i]);
+		allocateSparseMemo();
+		if(!known[i]) {
+			values[i] = mapValue(indices[i]);
+			known[i] = true;
+		}
+		return values[i];
+	}
+
+	@Override
+	public boolean isMissingSparse(int p1) {
+		return Double.isNaN(valueSparse(p1));
+	}
+
+	@Override
+	public String stringValue(int i) {
+		Attribute att = attribute(i);
+		if(att.isNominal() && !isMissing(i))
+			return att.value((int) value(i));
+		return Double.toString(value(i));
+	}
+
+	@Override
+	public double value(Attribute attribute) {
+		return value(indexOfAttribute(attribute));
+	}
+
+	@Override
+	public void setMissing(int instAttIndex) {
+		setValue(instAttIndex, Double.NaN);
+	}
+
+	@Override
+	public void setMissing(Attribute attribute) {
+		setMissing(indexOfAttribute(attribute));
+	}
+
+	@Override
+	public void setValue(Attribute attribute, double value) {
+		setValue(indexOfAttribute(attribute), value);
+	}
+
+	@Override
+	public boolean isMissing(int instAttIndex) {
+		return Double.isNaN(value(instAttIndex));
+	}
+
+	@Override
+	public boolean isMissing(Attribute attribute) {
+		return isMissing(indexOfAttribute(attribute));
+	}
+
+	@Override
+	public Attribute classAttribute() {
+		return header.classAttribute();
+	}
+
+	@Override
+	public int classIndex() {
+		return header.classIndex();
+	}
+
+	@Override
+	public boolean classIsMissing() {
+		return isMissing(classIndex());
+	}
+
+	@Override
+	public double classValue() {
+		return value(classIndex());
+	}
+
+	@Override
+	public int numClasses() {
+		return header.numClasses();
+	}
+
+	@Override
+	public void setClassValue(double d) {
+		setValue(classIndex(), d);
+	}
+
+	@Override
+	public void setDataset(Instances dataset) {
+		this.header = dataset;
+		if(edited != null)
+			edited.setDataset(dataset);
+	}
+
+	@Override
+	public Instances dataset() {
+		return header;
+	}
+
+	/* Multi-target accessors: single target (the class) is assumed, as in the rest of the package */
+
+	@Override
+	public int numInputAttributes() {
+		return (edited != null ? edited : source).numInputAttributes();
+	}
+
+	@Override
+	public int numOutputAttributes() {
+		return (edited != null ? edited : source).numOutputAttributes();
+	}
+
+	@Override
+	public int numberOutputTargets() {
+		return (edited != null ? edited : source).numberOutputTargets();
+	}
+
+	@Override
+	public double classValue(int instAttIndex) {
+		return classValue();
+	}
+
+	@Override
+	public void setClassValue(int indexClass, double valueAttribute) {
+		setClassValue(valueAttribute);
+	}
+
+	@Override
+	public Attribute outputAttribute(int outputIndex) {
+		return classAttribute();
+	}
+
+	@Override
+	public Attribute inputAttribute(int attributeIndex) {
+		return attribute(inputIndex(attributeIndex));
+	}
+
+	@Override
+	public double valueInputAttribute(int attributeIndex) {
+		return value(inputIndex(attributeIndex));
+	}
+
+	@Override
+	public double valueOutputAttribute(int attributeIndex) {
+		return classValue();
+	}
+
+	private int inputIndex(int attributeIndex) {
+		return attributeIndex < classIndex() ? attributeIndex : attributeIndex + 1;
+	}
+
+	@Override
+	public String toString() {
+		return copy().toString();
+	}
+}
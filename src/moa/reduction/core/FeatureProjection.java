@@ -0,0 +1,197 @@
+package moa.reduction.core;
+
+import java.util.Arrays;
+
+import weka.attributeSelection.AttributeEvaluator;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+/**
+ * Projection of instances onto a subset of selected attributes (plus the class), with the
+ * attribute mask computed once per selection. Instances keep their layout: learners either
+ * use the mask directly or read the deselected attributes as missing. There is no reduced
+ * header: its layout would change with every new selection, and so would the models built
+ * on it. Selections are computed by ranking the scores of an attribute evaluator with a
+ * partial (top-k) selection instead of a full sort.
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+public class FeatureProjection {
+
+	/** Selected attributes, in ascending order (class not included) */
+	protected final int[] selected;
+
+	/** Attributes kept in the projection (selected plus class), in ascending order */
+	protected final int[] indices;
+
+	/** Whether each attribute of the source header is kept */
+	protected final boolean[] mask;
+
+	/** Attributes not kept, in ascending order */
+	protected final int[] hidden;
+
+	protected final Instances source;
+
+	/**
+	 * Create a projection.
+	 * @param source Header of the instances to project.
+	 * @param selected Selected attributes, in ascending order (class not included).
+	 */
+	public FeatureProjection(Instances source, int[] selected) {
+		this.source = source;
+		this.selected = selected;
+		int classIndex = source.classIndex();
+		indices = new int[selected.length + 1];
+		int j = 0, newClassIndex = -1;
+		for (int i = 0; i < selected.length; i++) {
+			if(newClassIndex < 0 && classIndex < selected[i]) {
+				newClassIndex = j;
+				indices[j++] = classIndex;
+			}
+			indices[j++] = selected[i];
+		}
+		if(newClassIndex < 0) {
+			newClassIndex = j;
+			indices[j] = classIndex;
+		}
+		mask = new boolean[source.numAttributes()];
+		for (int i = 0; i < indices.length; i++) {
+			mask[indices[i]] = true;
+		}
+		hidden = new int[mask.length - indices.length];
+		for (int i = 0, k = 0; i < mask.length; i++) {
+			if(!mask[i])
+				hidden[k++] = i;
+		}
+	}
+
+	/**
+	 * Rank the attributes of a header with an evaluator and select the best ones.
+	 * @param evaluator Evaluator that scores each attribute.
+	 * @param source Header of the instances.
+	 * @param numToSelect Number of attributes to select.
+	 * @return Selected attributes, in ascending order.
+	 * @throws Exception if an attribute can not be evaluated.
+	 */
+	public static int[] rank(AttributeEvaluator evaluator, Instances source, int numToSelect) throws Exception {
+		double[] scores = new double[source.numAttributes()];
+		for (int i = 0; i < scores.length; i++) {
+			scores[i] = i == source.classIndex() ? Double.NaN : evaluator.evaluateAttribute(i);
+		}
+		return selectTopK(scores, numToSelect);
+	}
+
+	/**
+	 * Select the indices with the k highest scores using a bounded min-heap. Ties are
+	 * resolved in favor of the lowest index, and NaN scores are never selected.
+	 * @param scores Score by index.
+	 * @param k Number of indices to select.
+	 * @return Selected indices, in ascending order.
+	 */
+	public static int[] selectTopK(double[] scores, int k) {
+		int[] heap = new int[Math.max(0, k)];
+		int size = 0;
+		for (int i = 0; i < scores.length; i++) {
+			if(Double.isNaN(scores[i]))
+				continue;
+			if(size < heap.length) {
+				heap[size] = i;
+				siftUp(heap, size++, scores);
+			} else if(size > 0 && worse(heap[0], i, scores)) {
+				heap[0] = i;
+				siftDown(heap, size, scores);
+			}
+		}
+		int[] result = Arrays.copyOf(heap, size);
+		Arrays.sort(result);
+		return result;
+	}
+
+	/** Whether index a ranks below index b */
+	private static boolean worse(int a, int b, double[] scores) {
+		return scores[a] < scores[b] || (scores[a] == scores[b] && a > b);
+	}
+
+	private static void siftUp(int[] heap, int pos, double[] scores) {
+		int elem = heap[pos];
+		while(pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if(!worse(elem, heap[parent], scores))
+				break;
+			heap[pos] = heap[parent];
+			pos = parent;
+		}
+		heap[pos] = elem;
+	}
+
+	private static void siftDown(int[] heap, int size, double[] scores) {
+		int elem = heap[0], pos = 0;
+		while(true) {
+			int child = 2 * pos + 1;
+			if(child >= size)
+				break;
+			if(child + 1 < size && worse(heap[child + 1], heap[child], scores))
+				child++;
+			if(!worse(heap[child], elem, scores))
+				break;
+			heap[pos] = heap[child];
+			pos = child;
+		}
+		heap[pos] = elem;
+	}
+
+	/**
+	 * Check whether this projection already represents a selection.
+	 * @param source Header of the instances.
+	 * @param selected Selected attributes, in ascending order.
+	 * @return True if the projection can be reused.
+	 */
+	public boolean isProjection(Instances source, int[] selected) {
+		return SchemeSnapshot.sameFormat(this.source, source) && Arrays.equals(this.selected, selected);
+	}
+
+	/**
+	 * @return Selected attributes, in ascending order (class not included).
+	 */
+	public int[] getSelected() {
+		return selected;
+	}
+
+	/**
+	 * @return Whether each attribute of the source header is kept (class included).
+	 */
+	public boolean[] getMask() {
+		return mask;
+	}
+
+	/**
+	 * @return Attributes not kept (deselected), in ascending order.
+	 */
+	public int[] getHidden() {
+		return hidden;
+	}
+
+	/**
+	 * @return Estimated size in bytes of the index arrays.
+	 */
+	public long estimateByteSize() {
+		return MemoryEstimate.sizeOf(selected) + MemoryEstimate.sizeOf(indices) + MemoryEstimate.sizeOf(mask)
+				+ MemoryEstimate.sizeOf(hidden);
+	}
+
+	/**
+	 * Hide the deselected attributes of an instance, keeping its header. Deselected
+	 * values are set as missing, so learners that skip missing values only model the
+	 * selected attributes without changing the layout of their models. Instances are
+	 * masked by a view ({@link DiscretizedInstance}), their values are never copied.
+	 * @param inst Instance with the source layout (raw or discretized).
+	 * @return Instance with deselected values missing.
+	 */
+	public Instance hide(Instance inst) {
+		if(inst instanceof DiscretizedInstance && !((DiscretizedInstance) inst).isModified())
+			return new DiscretizedInstance((DiscretizedInstance) inst, this);
+		// Raw instances, or views whose values have been changed (read through their accessors)
+		return new DiscretizedInstance(inst, this);
+	}
+}
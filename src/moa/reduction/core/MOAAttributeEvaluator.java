@@ -5,7 +5,26 @@ import com.yahoo.labs.samoa.instances.Instance;
 public interface MOAAttributeEvaluator {
 	
 	  public void updateEvaluator(Instance inst) throws Exception;
+
+	  /**
+	   * Update the evaluator with a mini-batch of instances. By default
+	   * instances are processed one by one.
+	   * @param batch Instances in columnar form.
+	   * @throws Exception
+	   */
+	  public default void updateEvaluator(ColumnarBatch batch) throws Exception {
+		  for (int r = 0; r < batch.size(); r++) {
+			  updateEvaluator(batch.instance(r));
+		  }
+	  }
+
 	  public void applySelection();
 	  public boolean isUpdated();
 
+	  /**
+	   * Estimate the memory used by the statistics of the evaluator (see {@link MemoryEstimate}).
+	   * @return estimated size in bytes
+	   */
+	  public long estimateByteSize();
+
 }
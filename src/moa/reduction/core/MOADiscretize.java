@@ -1,12 +1,19 @@
 package moa.reduction.core;
 
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import weka.core.Attribute;
 import weka.core.ContingencyTables;
@@ -54,6 +61,25 @@ public abstract class MOADiscretize extends Filter {
 	
 	public boolean provideProb = false;
 	
+	/** Version of the discretization scheme, increased whenever cut points or labels change */
+	protected int m_SchemeVersion = 0;
+	
+	/** Snapshot of the scheme (and discretized header) for the last input format and scheme version */
+	protected transient SchemeSnapshot m_Snapshot = null;
+	protected transient WekaToSamoaInstanceConverter m_ConvWS = null;
+	protected transient SamoaToWekaInstanceConverter m_ConvSW = null;
+	
+	/** Last upper limit set in the range of columns to discretize */
+	protected transient int m_RangeUpper = -1;
+	
+	/** Maximum number of attributes updated by a single task in parallel updates (0 = sequential) */
+	protected int m_ParallelThreshold = 0;
+	
+	/** Initial scheme (e.g. computed offline), applied until the discretizer generates its own one */
+	protected double[][] m_InitialCutPoints = null;
+	protected String[][] m_InitialLabels = null;
+	protected transient SchemeSnapshot m_InitialSnapshot = null;
+	
 	/** Constructor - initialises the filter */
 	public MOADiscretize() {	
 	  setAttributeIndices("first-last");
@@ -76,9 +102,9 @@ public abstract class MOADiscretize extends Filter {
 	
 	  m_DiscretizeCols.setUpper(instanceInfo.numAttributes() - 1);
 	  m_CutPoints = null;
+	  schemeChanged();
 	
-	  // If we implement loading cutfiles, then load
-	  // them here and set the output format
+	  // Initial cut points (see loadCutPoints) are only applied to streams
 	  return false;
 	}
 
@@ -259,6 +285,366 @@ public abstract class MOADiscretize extends Filter {
 	  setAttributeIndices(Range.indicesToRangeList(attributes));
 	}
 	
+	/**
+	 * Marks the discretization scheme as changed, so that the cached snapshot
+	 * and output header are rebuilt on the next conversion. Subclasses must call it (or
+	 * {@link #setCutPoints(int, double[])}) whenever they modify m_CutPoints
+	 * or m_Labels.
+	 */
+	protected synchronized void schemeChanged() {
+	  m_SchemeVersion++;
+	}
+	
+	/**
+	 * Gets the current version of the discretization scheme.
+	 * 
+	 * @return a counter increased each time the cut points or labels change
+	 */
+	public int getSchemeVersion() {
+	  return m_SchemeVersion;
+	}
+	
+	/**
+	 * Replaces the cut points of an attribute, increasing the scheme version
+	 * only if they actually differ from the current ones. Cut point arrays are
+	 * always replaced, never modified in place once published.
+	 * 
+	 * @param attributeIndex the index (from 0) of the attribute
+	 * @param cutPoints the new cut points
+	 */
+	protected void setCutPoints(int attributeIndex, double[] cutPoints) {
+	  if (!Arrays.equals(m_CutPoints[attributeIndex], cutPoints)) {
+	    m_CutPoints[attributeIndex] = cutPoints;
+	    schemeChanged();
+	  }
+	}
+	
+	/**
+	 * Replaces the labels of an attribute, increasing the scheme version only
+	 * if they actually differ from the current ones.
+	 * 
+	 * @param attributeIndex the index (from 0) of the attribute
+	 * @param labels the new labels (one per interval)
+	 */
+	protected void setLabels(int attributeIndex, String[] labels) {
+	  if (!Arrays.equals(m_Labels[attributeIndex], labels)) {
+	    m_Labels[attributeIndex] = labels;
+	    schemeChanged();
+	  }
+	}
+	
+	/**
+	 * Sets the upper limit of the range of columns to discretize, only when
+	 * it changes (Range recomputes all its flags on every call).
+	 * 
+	 * @param upper the new upper limit
+	 */
+	protected void updateRangeUpper(int upper) {
+	  if (upper != m_RangeUpper) {
+	    m_DiscretizeCols.setUpper(upper);
+	    m_RangeUpper = upper;
+	    schemeChanged();
+	  }
+	}
+	
+	/**
+	 * Sets the number of attributes below which updates are performed
+	 * sequentially. Wider schemes are split into tasks of at most this number
+	 * of attributes and updated in the common fork/join pool.
+	 * 
+	 * @param threshold the number of attributes per task (0 to always update sequentially)
+	 */
+	public void setParallelThreshold(int threshold) {
+	  m_ParallelThreshold = threshold;
+	}
+	
+	/**
+	 * Gets the number of attributes per task in parallel updates.
+	 * 
+	 * @return the number of attributes per task (0 if updates are sequential)
+	 */
+	public int getParallelThreshold() {
+	  return m_ParallelThreshold;
+	}
+	
+	/**
+	 * Update of the state of a single attribute. Tasks for different
+	 * attributes may run concurrently, so they must only modify the state
+	 * of their own attribute.
+	 */
+	protected interface AttributeTask {
+	  void update(int attributeIndex);
+	}
+	
+	/**
+	 * Runs a per-attribute update for all the attributes, in parallel if the
+	 * number of attributes exceeds the parallel threshold.
+	 * 
+	 * @param numAttributes the number of attributes
+	 * @param task the update to run for each attribute
+	 */
+	protected void forEachAttribute(int numAttributes, AttributeTask task) {
+	  if (m_ParallelThreshold <= 0 || numAttributes <= m_ParallelThreshold) {
+	    for (int i = 0; i < numAttributes; i++) {
+	      task.update(i);
+	    }
+	  } else {
+	    ForkJoinPool.commonPool().invoke(new AttributeRange(task, 0, numAttributes, m_ParallelThreshold));
+	  }
+	}
+	
+	/**
+	 * Range of attributes to update, split in halves until it is below the threshold.
+	 */
+	protected static class AttributeRange extends RecursiveAction {
+	  
+	  private static final long serialVersionUID = 1L;
+	  
+	  private final AttributeTask task;
+	  private final int from, to, threshold;
+	  
+	  AttributeRange(AttributeTask task, int from, int to, int threshold) {
+	    this.task = task;
+	    this.from = from;
+	    this.to = to;
+	    this.threshold = threshold;
+	  }
+	  
+	  @Override
+	  protected void compute() {
+	    if (to - from <= threshold) {
+	      for (int i = from; i < to; i++) {
+	        task.update(i);
+	      }
+	    } else {
+	      int mid = (from + to) >>> 1;
+	      invokeAll(new AttributeRange(task, from, mid, threshold),
+	        new AttributeRange(task, mid, to, threshold));
+	    }
+	  }
+	}
+	
+	/**
+	 * Gets an immutable snapshot of the current scheme for a given input format.
+	 * The snapshot (and its discretized header) is only rebuilt when the scheme
+	 * version or the input format change.
+	 * 
+	 * @param inputFormat the header of the instances to discretize
+	 * @return the snapshot of the scheme
+	 */
+	protected SchemeSnapshot getSnapshot(Instances inputFormat) {
+	  if (m_Snapshot == null || m_Snapshot.getVersion() != m_SchemeVersion
+	    || !m_Snapshot.matchesFormat(inputFormat)) {
+	    if (m_ConvWS == null) {
+	      m_ConvWS = new WekaToSamoaInstanceConverter();
+	      m_ConvSW = new SamoaToWekaInstanceConverter();
+	    }
+	    Instances header = m_ConvWS.samoaInstances(changeOutputFormat(m_ConvSW.wekaInstances(inputFormat)));
+	    boolean[] discretized = new boolean[inputFormat.numAttributes()];
+	    for (int i = 0; i < discretized.length; i++) {
+	      discretized[i] = m_DiscretizeCols.isInRange(i) && inputFormat.attribute(i).isNumeric();
+	    }
+	    m_Snapshot = new SchemeSnapshot(m_CutPoints, m_Labels, discretized, inputFormat,
+	      header, m_SchemeVersion, m_Snapshot);
+	  }
+	  return m_Snapshot;
+	}
+	
+	/**
+	 * Gets the discretized header for a given input format.
+	 * 
+	 * @param inputFormat the header of the instances to discretize
+	 * @return the discretized header
+	 */
+	protected Instances getOutputHeader(Instances inputFormat) {
+	  return getSnapshot(inputFormat).getHeader();
+	}
+	
+	/**
+	 * Whether a discretization scheme has been generated, so that it can be
+	 * applied to new instances.
+	 * 
+	 * @return true if the scheme can be applied
+	 */
+	protected boolean isSchemeReady() {
+	  return m_CutPoints != null;
+	}
+	
+	/**
+	 * Moves the current scheme into m_CutPoints and m_Labels, for discretizers
+	 * that keep it in other structures. Called before applying or publishing
+	 * the scheme.
+	 */
+	protected void refreshCutPoints() {
+	}
+	
+	/**
+	 * Gets a snapshot of the current scheme that can be applied from other
+	 * threads while this discretizer keeps being updated.
+	 * 
+	 * @param inputFormat the header of the instances to discretize
+	 * @return the snapshot (of the initial scheme, if any, until the discretizer generates
+	 *         its own one), or null if no scheme has been generated yet
+	 */
+	public SchemeSnapshot publishScheme(Instances inputFormat) {
+	  if (!isSchemeReady()) {
+	    return m_InitialCutPoints != null ? getInitialSnapshot(inputFormat) : null;
+	  }
+	  refreshCutPoints();
+	  updateRangeUpper(inputFormat.numAttributes() - 1);
+	  return getSnapshot(inputFormat);
+	}
+	
+	/**
+	 * Sets an initial scheme (e.g. computed offline), applied from the first instance until
+	 * the discretizer generates its own scheme. The statistics of the discretizer are not
+	 * affected, so it still needs its usual warm-up. Attributes without cut points are left
+	 * raw until then.
+	 * 
+	 * @param cutPoints the cut points by attribute (null for attributes not discretized)
+	 * @param labels numeric labels of the intervals by attribute (may be null)
+	 */
+	public void setInitialCutPoints(double[][] cutPoints, String[][] labels) {
+	  m_InitialCutPoints = cutPoints;
+	  m_InitialLabels = labels;
+	  m_InitialSnapshot = null;
+	}
+	
+	/**
+	 * Gets whether an initial scheme has been set.
+	 * 
+	 * @return true if there are initial cut points
+	 */
+	public boolean hasInitialCutPoints() {
+	  return m_InitialCutPoints != null;
+	}
+	
+	/**
+	 * Loads an initial scheme from a text file. Each line gives the cut points of an
+	 * attribute (index from 0), and optionally one numeric label per cut point, e.g.
+	 * "2: 0.15, 0.4, 0.85" or "2: 0.15, 0.4, 0.85 ; 1, 2, 3". Empty lines and lines
+	 * starting with '#' are ignored.
+	 * 
+	 * @param file the cut point file
+	 * @throws IOException if the file can not be read or is not well formed
+	 * @see #setInitialCutPoints(double[][], String[][])
+	 */
+	public void loadCutPoints(File file) throws IOException {
+	  List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+	  double[][] cutPoints = new double[0][];
+	  String[][] labels = null;
+	  int n = 0;
+	  for (String line : lines) {
+	    n++;
+	    line = line.trim();
+	    if (line.isEmpty() || line.startsWith("#")) {
+	      continue;
+	    }
+	    int sep = line.indexOf(':');
+	    if (sep < 0) {
+	      throw new IOException(file + ", line " + n + ": missing ':' after the attribute index");
+	    }
+	    try {
+	      int att = Integer.parseInt(line.substring(0, sep).trim());
+	      String[] parts = line.substring(sep + 1).split(";");
+	      String[] values = parts[0].trim().isEmpty() ? new String[0] : parts[0].split(",");
+	      double[] cp = new double[values.length];
+	      for (int j = 0; j < cp.length; j++) {
+	        cp[j] = Double.parseDouble(values[j].trim());
+	      }
+	      if (att >= cutPoints.length) {
+	        cutPoints = Arrays.copyOf(cutPoints, att + 1);
+	        if (labels != null) {
+	          labels = Arrays.copyOf(labels, att + 1);
+	        }
+	      }
+	      cutPoints[att] = cp;
+	      if (parts.length > 1) {
+	        String[] lb = parts[1].split(",");
+	        if (lb.length != cp.length) {
+	          throw new IOException(file + ", line " + n + ": one label per cut point expected");
+	        }
+	        for (int j = 0; j < lb.length; j++) {
+	          lb[j] = lb[j].trim();
+	          Float.parseFloat(lb[j]);
+	        }
+	        if (labels == null) {
+	          labels = new String[cutPoints.length][];
+	        }
+	        labels[att] = lb;
+	      }
+	    } catch (NumberFormatException e) {
+	      throw new IOException(file + ", line " + n + ": " + e.getMessage());
+	    }
+	  }
+	  setInitialCutPoints(cutPoints, labels);
+	}
+	
+	/**
+	 * Saves the current scheme in the format read by {@link #loadCutPoints(File)},
+	 * so that it can be used to warm-start other discretizers.
+	 * 
+	 * @param file the destination file
+	 * @throws IOException if the file can not be written
+	 */
+	public void saveCutPoints(File file) throws IOException {
+	  if (isSchemeReady()) {
+	    refreshCutPoints();
+	  }
+	  List<String> lines = new ArrayList<String>();
+	  lines.add("# attribute index: cut points [; labels]");
+	  for (int i = 0; m_CutPoints != null && i < m_CutPoints.length; i++) {
+	    if (m_CutPoints[i] == null) {
+	      continue;
+	    }
+	    StringBuilder sb = new StringBuilder().append(i).append(':');
+	    for (int j = 0; j < m_CutPoints[i].length; j++) {
+	      sb.append(j == 0 ? " " : ", ").append(m_CutPoints[i][j]);
+	    }
+	    if (m_Labels != null && m_Labels[i] != null && m_Labels[i].length == m_CutPoints[i].length) {
+	      sb.append(" ;");
+	      for (int j = 0; j < m_Labels[i].length; j++) {
+	        sb.append(j == 0 ? " " : ", ").append(m_Labels[i][j]);
+	      }
+	    }
+	    lines.add(sb.toString());
+	  }
+	  Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Gets a snapshot of the initial scheme for a given input format.
+	 * 
+	 * @param inputFormat the header of the instances to discretize
+	 * @return the snapshot of the initial scheme
+	 */
+	protected synchronized SchemeSnapshot getInitialSnapshot(Instances inputFormat) {
+	  if (m_InitialSnapshot == null || !m_InitialSnapshot.matchesFormat(inputFormat)) {
+	    if (m_ConvWS == null) {
+	      m_ConvWS = new WekaToSamoaInstanceConverter();
+	      m_ConvSW = new SamoaToWekaInstanceConverter();
+	    }
+	    double[][] cutPoints = new double[inputFormat.numAttributes()][];
+	    String[][] labels = m_InitialLabels != null ? new String[cutPoints.length][] : null;
+	    boolean[] discretized = new boolean[cutPoints.length];
+	    for (int i = 0; i < cutPoints.length && i < m_InitialCutPoints.length; i++) {
+	      if (m_InitialCutPoints[i] != null && inputFormat.attribute(i).isNumeric() 
+	        && i != inputFormat.classIndex()) {
+	        discretized[i] = true;
+	        cutPoints[i] = m_InitialCutPoints[i];
+	        if (labels != null && i < m_InitialLabels.length) {
+	          labels[i] = m_InitialLabels[i];
+	        }
+	      }
+	    }
+	    Instances header = m_ConvWS.samoaInstances(changeOutputFormat(
+	      m_ConvSW.wekaInstances(inputFormat), cutPoints, labels, discretized));
+	    m_InitialSnapshot = new SchemeSnapshot(cutPoints, labels, discretized, inputFormat,
+	      header, -1, null);
+	  }
+	  return m_InitialSnapshot;
+	}
+	
 	/**
 	 * Gets the cut points for an attribute
 	 * 
@@ -345,11 +731,28 @@ public abstract class MOADiscretize extends Filter {
 	    //setOutputFormat(null);
 	    return null;
 	  }
+	  boolean[] discretized = new boolean[inputFormat.numAttributes()];
+	  for (int i = 0; i < discretized.length; i++) {
+	    discretized[i] = m_DiscretizeCols.isInRange(i) && inputFormat.attribute(i).isNumeric();
+	  }
+	  return changeOutputFormat(inputFormat, m_CutPoints, m_Labels, discretized);
+	}
+	
+	/**
+	 * Builds the discretized header for a given scheme.
+	 * 
+	 * @param inputFormat the header of the raw instances
+	 * @param m_CutPoints the cut points by attribute
+	 * @param m_Labels the labels by attribute (may be null)
+	 * @param discretized whether each attribute is discretized
+	 * @return the discretized header
+	 */
+	protected weka.core.Instances changeOutputFormat(weka.core.Instances inputFormat,
+	  double[][] m_CutPoints, String[][] m_Labels, boolean[] discretized) {
 	  ArrayList<Attribute> attributes = new ArrayList<Attribute>(inputFormat.numAttributes());
 	  int classIndex = inputFormat.classIndex();
 	  for (int i = 0, m = inputFormat.numAttributes(); i < m; ++i) {
-	    if ((m_DiscretizeCols.isInRange(i))
-	      && (inputFormat.attribute(i).isNumeric())) {
+	    if (discretized[i]) {
 	
 	      Set<String> cutPointsCheck = new HashSet<String>();
 	      double[] cutPoints = m_CutPoints[i];
@@ -403,71 +806,15 @@ public abstract class MOADiscretize extends Filter {
 	}
 	
 	/**
-	 * Convert a single instance over. The converted instance is added to the end
-	 * of the output queue.
+	 * Convert a single instance over. The converted instance is a lazy view
+	 * of the given instance: values are only discretized when they are read.
 	 * 
 	 * @param instance the instance to convert
+	 * @return the discretized view
 	 */
 	protected Instance convertInstance(Instance instance) {
-		int index = 0;
-	    m_DiscretizeCols.setUpper(instance.dataset().numAttributes() - 1); // Important (class is removed from discretization)
-	    double[] vals = new double[instance.numAttributes()];
-	    // Copy and convert the values
-	    for (int i = 0; i < instance.numAttributes(); i++) {
-	      if (m_DiscretizeCols.isInRange(i)
-	        && instance.attribute(i).isNumeric()) {
-	        int j;
-	        float currentVal = (float) instance.value(i);
-	        if (m_CutPoints[i] == null) {
-	          if (instance.isMissing(i)) {
-	            vals[index] = Utils.missingValue();
-	          } else {
-	            vals[index] = 0;
-	          }
-	        } else {
-	        	 if (instance.isMissing(i)) {
-	              vals[index] = Utils.missingValue();
-	            } else {
-	              for (j = 0; j < m_CutPoints[i].length; j++) {
-	            	float cp = (float)(Math.round((double) m_CutPoints[i][j] *1000000.0) / 1000000.0);
-	                if (currentVal <= cp) {
-	                  break;
-	                }
-	              }
-	              if(m_Labels != null) {
-	            	  if(m_Labels[i] != null) {
-	            		  if(j < m_Labels[i].length)
-	            			  vals[index] = Float.parseFloat(m_Labels[i][j]);
-	            		  else 
-	            			  vals[index] = 0;
-	            	  } else {
-	            		  vals[index] = j;
-	            	  }
-	              } else {
-	            	  vals[index] = j;
-	              }
-	            }
-	        }
-	      } else {
-	        vals[index] = instance.value(i);
-	      }
-	      index++;
-	    }
-	    
-	    Instance outI = null;
-	    if (instance instanceof SparseInstance) {
-	    	outI = new SparseInstance(instance.weight(), vals);
-	    } else {
-	    	outI = new DenseInstance(instance.weight(), vals);
-	    }
-
-	    //copyValues(inst, false, instance.dataset(), outputFormatPeek());
-	    
-	    WekaToSamoaInstanceConverter convWS = new WekaToSamoaInstanceConverter();
-	    SamoaToWekaInstanceConverter convSW = new SamoaToWekaInstanceConverter();	    
-	    Instances outS = convWS.samoaInstances(changeOutputFormat(convSW.wekaInstances(instance.dataset())));
-	    outI.setDataset(outS);
-	    return(outI);
+	    updateRangeUpper(instance.dataset().numAttributes() - 1); // Important (class is removed from discretization)
+	    return getSnapshot(instance.dataset()).apply(instance);
 	}
 
 	/**
@@ -545,7 +892,50 @@ public abstract class MOADiscretize extends Filter {
 		}
 		return 0;
 	}
-	
+
+	/**
+	 * Estimates the memory used by the discretization state (see {@link MemoryEstimate}).
+	 * This base version only counts the published scheme (cut points and labels);
+	 * subclasses add the statistics they keep for each attribute.
+	 *
+	 * @return estimated size in bytes
+	 */
+	public long estimateByteSize() {
+		return MemoryEstimate.sizeOf(m_CutPoints) + MemoryEstimate.sizeOf(m_Labels);
+	}
+
+	/**
+	 * Writes the published scheme and the common settings into a checkpoint.
+	 * Checkpointable discretizers call it before writing their own statistics.
+	 *
+	 * @param out the checkpoint buffer
+	 */
+	protected void writeScheme(CheckpointBuffer out) {
+	  out.putString(m_DiscretizeCols.getRanges());
+	  out.putBoolean(m_DiscretizeCols.getInvert());
+	  out.putBoolean(m_Init);
+	  out.putBoolean(provideProb);
+	  out.putDoubles(m_CutPoints);
+	  out.putStrings(m_Labels);
+	}
+
+	/**
+	 * Restores the scheme written by {@link #writeScheme(CheckpointBuffer)}.
+	 * The cached snapshot is rebuilt on the next conversion.
+	 *
+	 * @param in the checkpoint buffer
+	 */
+	protected void readScheme(CheckpointBuffer in) {
+	  m_DiscretizeCols.setRanges(in.getString());
+	  m_DiscretizeCols.setInvert(in.getBoolean());
+	  m_Init = in.getBoolean();
+	  provideProb = in.getBoolean();
+	  m_CutPoints = in.getDoubles2();
+	  m_Labels = in.getStrings2();
+	  m_RangeUpper = -1;
+	  schemeChanged();
+	}
+
 	protected void writeCPointsToFile(int att1, int att2, int iteration, String method){
 		  FileWriter cpoints1 = null;
 		  FileWriter cpoints2 = null;
@@ -597,6 +987,85 @@ public abstract class MOADiscretize extends Filter {
 	public abstract Float condProbGivenClass(int attI, double rVal, int dVal, int classVal, int classCount);
 	public abstract int getAttValGivenClass(int attI, double rVal, int dVal, int classVal);
 	public abstract void updateEvaluator(Instance inst);
-	public abstract Instance applyDiscretization(Instance inst);
+
+	/**
+	 * Apply the current discretization scheme to an instance.
+	 * 
+	 * @param inst the instance to discretize
+	 * @return the discretized instance (with the initial scheme, or the original one if no
+	 *         scheme has been generated yet)
+	 */
+	public Instance applyDiscretization(Instance inst) {
+	  if (isSchemeReady()) {
+	    refreshCutPoints();
+	    return convertInstance(inst);
+	  }
+	  if (m_InitialCutPoints != null) {
+	    return getInitialSnapshot(inst.dataset()).apply(inst);
+	  }
+	  return inst;
+	}
+
+	/**
+	 * Update the discretization model with a mini-batch of instances. By default
+	 * instances are processed one by one, discretizers may override it to
+	 * update their structures attribute by attribute.
+	 *
+	 * @param batch the instances in columnar form
+	 */
+	public void updateEvaluator(ColumnarBatch batch) {
+	  for (int r = 0; r < batch.size(); r++) {
+	    updateEvaluator(batch.instance(r));
+	  }
+	}
+
+	/**
+	 * Discretize a mini-batch of instances with the current scheme. Values are
+	 * mapped attribute by attribute (one lookup per column) into materialized
+	 * instances.
+	 *
+	 * @param batch the instances in columnar form
+	 * @return the discretized instances (the originals if the scheme is not ready)
+	 */
+	public Instance[] applyDiscretization(ColumnarBatch batch) {
+	  Instance[] output = new Instance[batch.size()];
+	  SchemeSnapshot scheme = publishScheme(batch.header());
+	  if (scheme == null) {
+	    for (int r = 0; r < output.length; r++) {
+	      output[r] = batch.instance(r);
+	    }
+	    return output;
+	  }
+	  Instances header = scheme.getHeader();
+	  double[][] rows = new double[output.length][batch.numAttributes()];
+	  for (int i = 0; i < batch.numAttributes(); i++) {
+	    double[] column = batch.column(i);
+	    if (scheme.isDiscretized(i)) {
+	      CutPointLookup lookup = scheme.getLookup(i);
+	      for (int r = 0; r < output.length; r++) {
+	        if (Double.isNaN(column[r])) {
+	          rows[r][i] = Utils.missingValue();
+	        } else {
+	          rows[r][i] = lookup != null ? lookup.value((float) column[r]) : 0;
+	        }
+	      }
+	    } else {
+	      for (int r = 0; r < output.length; r++) {
+	        rows[r][i] = column[r];
+	      }
+	    }
+	  }
+	  for (int r = 0; r < output.length; r++) {
+	    Instance outI;
+	    if (batch.instance(r) instanceof SparseInstance) {
+	      outI = new SparseInstance(batch.weights()[r], rows[r]);
+	    } else {
+	      outI = new DenseInstance(batch.weights()[r], rows[r]);
+	    }
+	    outI.setDataset(header);
+	    output[r] = outI;
+	  }
+	  return output;
+	}
 
 }
\ No newline at end of file
@@ -0,0 +1,134 @@
+package moa.reduction.core;
+
+/**
+ * Analytic estimates of the memory used by the structures kept by discretizers and
+ * evaluators, so that their state can be followed without MOA's sizeofag agent.
+ * Sizes assume a 64-bit JVM with compressed references (12-byte object headers,
+ * 4-byte references, objects aligned to 8 bytes) and Java 8 strings (UTF-16).
+ * Keys and values stored in collections are not included in the collection size.
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+public final class MemoryEstimate {
+
+	public static final int OBJECT_HEADER = 12;
+	public static final int ARRAY_HEADER = 16;
+	public static final int REFERENCE = 4;
+
+	/** Boxed values (Float, Integer and Double) */
+	public static final int BOXED_FLOAT = 16;
+	public static final int BOXED_INTEGER = 16;
+	public static final int BOXED_DOUBLE = 24;
+
+	/** Nodes of the standard collections */
+	public static final int HASH_MAP_NODE = 32;
+	public static final int TREE_MAP_ENTRY = 40;
+	public static final int LINKED_LIST_NODE = 24;
+
+	private MemoryEstimate() {
+	}
+
+	/**
+	 * @return Size rounded up to the object alignment.
+	 */
+	public static long align(long size) {
+		return (size + 7) & ~7L;
+	}
+
+	/**
+	 * @param length Number of elements.
+	 * @param elementSize Bytes per element (REFERENCE for object arrays).
+	 * @return Size of an array.
+	 */
+	public static long array(int length, int elementSize) {
+		return align(ARRAY_HEADER + (long) length * elementSize);
+	}
+
+	public static long sizeOf(double[] a) {
+		return a == null ? 0 : array(a.length, 8);
+	}
+
+	public static long sizeOf(float[] a) {
+		return a == null ? 0 : array(a.length, 4);
+	}
+
+	public static long sizeOf(int[] a) {
+		return a == null ? 0 : array(a.length, 4);
+	}
+
+	public static long sizeOf(boolean[] a) {
+		return a == null ? 0 : array(a.length, 1);
+	}
+
+	public static long sizeOf(double[][] a) {
+		if(a == null)
+			return 0;
+		long size = array(a.length, REFERENCE);
+		for (double[] row : a)
+			size += sizeOf(row);
+		return size;
+	}
+
+	public static long sizeOf(int[][] a) {
+		if(a == null)
+			return 0;
+		long size = array(a.length, REFERENCE);
+		for (int[] row : a)
+			size += sizeOf(row);
+		return size;
+	}
+
+	public static long sizeOf(String s) {
+		return s == null ? 0 : align(OBJECT_HEADER + REFERENCE + 4) + array(s.length(), 2);
+	}
+
+	public static long sizeOf(String[][] a) {
+		if(a == null)
+			return 0;
+		long size = array(a.length, REFERENCE);
+		for (String[] row : a) {
+			if(row != null) {
+				size += array(row.length, REFERENCE);
+				for (String s : row)
+					size += sizeOf(s);
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @param size Number of entries.
+	 * @return Size of a HashMap (or HashSet) with its table and nodes.
+	 */
+	public static long hashMap(int size) {
+		int capacity = 16;
+		while (capacity * 3 / 4 < size)
+			capacity <<= 1;
+		return align(OBJECT_HEADER + 3 * REFERENCE + 4 * 4) + array(capacity, REFERENCE)
+				+ (long) size * HASH_MAP_NODE;
+	}
+
+	/**
+	 * @param size Number of entries.
+	 * @return Size of a TreeMap (or TreeSet) with its entries.
+	 */
+	public static long treeMap(int size) {
+		return align(OBJECT_HEADER + 4 * REFERENCE + 2 * 4) + (long) size * TREE_MAP_ENTRY;
+	}
+
+	/**
+	 * @param size Number of elements.
+	 * @return Size of a LinkedList (or LinkedList based queue) with its nodes.
+	 */
+	public static long linkedList(int size) {
+		return align(OBJECT_HEADER + 2 * REFERENCE + 2 * 4) + (long) size * LINKED_LIST_NODE;
+	}
+
+	/**
+	 * @param size Number of elements (capacity is assumed to be the size).
+	 * @return Size of an ArrayList, PriorityQueue or other array based collection.
+	 */
+	public static long arrayList(int size) {
+		return align(OBJECT_HEADER + REFERENCE + 2 * 4) + array(size, REFERENCE);
+	}
+}
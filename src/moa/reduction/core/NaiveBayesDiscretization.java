@@ -23,7 +23,11 @@ package moa.reduction.core;
 //import weka.attributeSelection.InfoGainAttributeEval; 
 //import weka.attributeSelection.Ranker;
 //import weka.attributeSelection.AttributeSelection;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import moa.classifiers.AbstractClassifier;
@@ -35,7 +39,6 @@ import moa.core.AutoExpandVector;
 import moa.core.DoubleVector;
 import moa.core.Measurement;
 import moa.core.StringUtils;
-import moa.core.TimingUtils;
 import moa.reduction.bayes.IDAdiscretize;
 import moa.reduction.bayes.IFFDdiscretize;
 import moa.reduction.bayes.IncrInfoThAttributeEval;
@@ -46,6 +49,7 @@ import moa.reduction.bayes.PIDdiscretize;
 import weka.attributeSelection.AttributeSelection;
 import weka.core.Utils;
 
+import com.github.javacliparser.FileOption;
 import com.github.javacliparser.IntOption;
 import com.yahoo.labs.samoa.instances.Instance;
 
@@ -73,31 +77,40 @@ public class NaiveBayesDiscretization extends AbstractClassifier {
         return "Naive Bayes classifier with feature selection: performs classic bayesian prediction while making naive assumption that all inputs are independent.";
     }
     protected DoubleVector observedClassDistribution;
-    protected static AttributeSelection selector = null;
+    protected AttributeSelection selector = null;
     protected AutoExpandVector<AttributeClassObserver> attributeObservers;
 
-    public static IntOption numFeaturesOption = new IntOption("numFeatures", 'f', 
+    public IntOption numFeaturesOption = new IntOption("numFeatures", 'f', 
     		"The number of features to select", 10, 1, Integer.MAX_VALUE);
-    public static IntOption fsmethodOption = new IntOption("fsMethod", 'm', 
+    public IntOption fsmethodOption = new IntOption("fsMethod", 'm', 
     		"Infotheoretic method to be used in feature selection: 0. No method. 1. InfoGain 2. Symmetrical Uncertainty 3. OFSGD", 0, 0, 3);
-    public static IntOption discmethodOption = new IntOption("discMethod", 'd', 
+    public IntOption discmethodOption = new IntOption("discMethod", 'd', 
     		"Discretization method to be used: 0. No method. 1. PiD 2. IFFD 3. Online Chi-Merge 4. IDA 5. LOFD", 1, 0, 5);
-    public static IntOption winSizeOption = new IntOption("winSize", 'w', 
+    public IntOption winSizeOption = new IntOption("winSize", 'w', 
     		"Window size for model updates", 5000, 1, Integer.MAX_VALUE);  
-    public static IntOption thresholdOption = new IntOption("threshold", 't', 
+    public IntOption thresholdOption = new IntOption("threshold", 't', 
     		"Threshold for initialization", 10000, 1, Integer.MAX_VALUE);  
-    public static IntOption decimalsOption = new IntOption("decimals", 'e', 
+    public IntOption decimalsOption = new IntOption("decimals", 'e', 
     		"Number of decimals to round", 3, 0, Integer.MAX_VALUE); 
-    public static IntOption maxLabelsOption = new IntOption("maxLabels", 'l', 
+    public IntOption maxLabelsOption = new IntOption("maxLabels", 'l', 
     		"Number of different labels to use in discretization", 10000, 10, Integer.MAX_VALUE); 
     public IntOption numClassesOption = new IntOption("numClasses", 'c', 
     		"Number of classes for this problem (Online Chi-Merge)", 100, 1, Integer.MAX_VALUE);
-    public static IntOption histogramOption = new IntOption("histogram", 'h', 
+    public IntOption histogramOption = new IntOption("histogram", 'h', 
     		"Whether histogram statistics are provided directly to learner", 0, 0, 1); 
-    protected double trainTotalTime = 0, predictTotalTime = 0;
+    public IntOption lofBudgetOption = new IntOption("lofBudget", 'g', 
+    		"Global memory budget (KB) for the points kept by RebDiscretize (LOFD), the oldest ones are evicted first. 0. Unbounded", 0, 0, Integer.MAX_VALUE); 
+    public FileOption cutPointsFileOption = new FileOption("cutPointsFile", 'k', 
+    		"File with initial cut points (e.g. computed offline), applied until the discretizer generates its own scheme", null, "txt", false); 
+    // Time spent in each stage of the pipeline
+    protected StageStatistics fsUpdateStats = new StageStatistics("FS update"), 
+    		discUpdateStats = new StageStatistics("discretizer update"),
+    		discApplyStats = new StageStatistics("discretizer apply"),
+    		trainStats = new StageStatistics("model train"),
+    		predictStats = new StageStatistics("model predict");
     
-    protected static MOAAttributeEvaluator fselector = null;
-    protected static MOADiscretize discretizer = null;
+    protected MOAAttributeEvaluator fselector = null;
+    protected MOADiscretize discretizer = null;
     protected int totalCount = 0, classified = 0, correctlyClassified = 0;
     protected Set<Integer> selectedFeatures = new HashSet<Integer>();
 	//private double sumTime, sumTime2;
@@ -107,14 +120,19 @@ public class NaiveBayesDiscretization extends AbstractClassifier {
 	    this.observedClassDistribution = new DoubleVector();
         this.attributeObservers = new AutoExpandVector<AttributeClassObserver>();
         totalCount = 0; classified = 0; correctlyClassified = 0;
+        fsUpdateStats.reset(); discUpdateStats.reset(); discApplyStats.reset();
+        trainStats.reset(); predictStats.reset();
+        // Per-learner pipeline state (no sharing between learners in the same JVM)
+        fselector = null;
+        discretizer = null;
+        selector = null;
+        selectedFeatures.clear();
     }
 
     @Override
     public void trainOnInstanceImpl(Instance inst) {
     	
-    	long trainStartTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
-    	
-    	Instance rinst = inst.copy();
+    	Instance rinst = inst;
     	// Update the FS evaluator (no selection is applied here)
     	if(fsmethodOption.getValue() != 0) {
     		if(fselector == null) {
@@ -126,6 +144,7 @@ public class NaiveBayesDiscretization extends AbstractClassifier {
     	    		//fselector = null;
     	    	}
     		}
+    		long start = System.nanoTime();
     		try {
     			if(inst == null) {
     				System.err.println("Error: null instance");
@@ -135,11 +154,10 @@ public class NaiveBayesDiscretization extends AbstractClassifier {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
 			}
+    		fsUpdateStats.record(System.nanoTime() - start);
     	}
 	    	
     	// Update the discretization scheme, and apply it to the given instance
-    	//long evaluateStartTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
-		
     	if(discmethodOption.getValue() != 0) {
     		if(discretizer == null) {
     			if(discmethodOption.getValue() == 1) {
@@ -153,18 +171,28 @@ public class NaiveBayesDiscretization extends AbstractClassifier {
     	    	} else {
     	    		discretizer = new LOFDiscretizer(winSizeOption.getValue(), 
     	    				thresholdOption.getValue(), decimalsOption.getValue(), maxLabelsOption.getValue());
+    	    		((LOFDiscretizer) discretizer).setMemoryBudget(lofBudgetOption.getValue() * 1024L);
     	    	}
+    			if(cutPointsFileOption.getFile() != null) {
+    				try {
+    					discretizer.loadCutPoints(cutPointsFileOption.getFile());
+    				} catch (IOException e) {
+    					// A wrong file must not silently fall back to a cold start
+    					throw new UncheckedIOException("Can not load the cut points: " + e.getMessage(), e);
+    				}
+    			}
     		} else {
-
+    			long start = System.nanoTime();
     			discretizer.updateEvaluator(inst);
-
+    			discUpdateStats.record(System.nanoTime() - start);
     		}
     		//System.out.println("Number of new intervals: " + discretizer.getNumberIntervals());	
+    		long start = System.nanoTime();
     		rinst = discretizer.applyDiscretization(inst);
+    		discApplyStats.record(System.nanoTime() - start);
     	}
-
-		  //sumTime += TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread() - evaluateStartTime);
     	
+    	long trainStartTime = System.nanoTime();
         this.observedClassDistribution.addToValue((int) rinst.classValue(), rinst.weight());
         for (int i = 0; i < rinst.numAttributes() - 1; i++) {        		
         		if(!discretizedAttribute(i)) {
@@ -186,10 +214,8 @@ public class NaiveBayesDiscretization extends AbstractClassifier {
                     obs.observeAttributeClass(value, (int) rinst.classValue(), rinst.weight());
         		}
         }                
+        trainStats.record(System.nanoTime() - trainStartTime);
         totalCount++;
-        trainTotalTime += TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread() - trainStartTime);
-        if(totalCount % 1000 == 0)
-            	System.out.println("Partial train time: " + trainTotalTime);
     }
     
     private boolean discretizedAttribute(int attIndex){
@@ -199,19 +225,21 @@ public class NaiveBayesDiscretization extends AbstractClassifier {
 
     @Override
     public double[] getVotesForInstance(Instance inst) {
-
-    	long predictStartTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
-    	double[] out = doNaiveBayesPrediction(inst, this.observedClassDistribution,
+    	return doNaiveBayesPrediction(inst, this.observedClassDistribution,
 				this.attributeObservers);
-    	predictTotalTime += TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread() - predictStartTime);
-    	if(totalCount % 1000 == 0)
-        	System.out.println("Partial prediction time: " + predictTotalTime);
-    	return out; 
     }
 
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
-        return null;
+    	List<Measurement> measurements = new ArrayList<Measurement>();
+    	fsUpdateStats.addMeasurements(measurements);
+    	discUpdateStats.addMeasurements(measurements);
+    	discApplyStats.addMeasurements(measurements);
+    	trainStats.addMeasurements(measurements);
+    	predictStats.addMeasurements(measurements);
+    	measurements.add(new Measurement("discretizer size (bytes)", discretizer == null ? 0 : discretizer.estimateByteSize()));
+    	measurements.add(new Measurement("feature evaluator size (bytes)", fselector == null ? 0 : fselector.estimateByteSize()));
+        return measurements.toArray(new Measurement[measurements.size()]);
     }
 
     @Override
@@ -258,11 +286,14 @@ public class NaiveBayesDiscretization extends AbstractClassifier {
             AutoExpandVector<AttributeClassObserver> attributeObservers) {
     	
     	// Feature selection process performed before
-    	Instance sinst = inst.copy();
+    	Instance sinst = inst;
     	if(discmethodOption.getValue() != 0 && discretizer != null) {
+    		long start = System.nanoTime();
     		sinst = discretizer.applyDiscretization(sinst);
+    		discApplyStats.record(System.nanoTime() - start);
     	}
     	
+    	long start = System.nanoTime();
 		// Naive Bayes predictions
         double[] votes = new double[observedClassDistribution.numValues()];
         double observedClassSum = observedClassDistribution.sumOfValues();
@@ -293,6 +324,7 @@ public class NaiveBayesDiscretization extends AbstractClassifier {
             	}
             }
         }
+        predictStats.record(System.nanoTime() - start);
         // TODO: need logic to prevent underflow?
         // Compute some statistics about classification performance
         if(Utils.maxIndex(votes) == inst.classIndex())
@@ -0,0 +1,203 @@
+package moa.reduction.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import moa.classifiers.AbstractClassifier;
+
+import com.yahoo.labs.samoa.instances.InstancesHeader;
+
+/**
+ * Versioned binary checkpoint of a {@link ReductionClassifier}, written and read with NIO
+ * channels, so that a job can be restarted without re-training the whole pipeline.
+ * Discretizers and feature evaluators that implement {@link Checkpointable} are written as
+ * primitive values and arrays; the rest of stages and the base learner are written with Java
+ * serialization. Layout (little-endian):
+ * <ul>
+ * <li>magic number and format version</li>
+ * <li>options of the classifier (CLI string) and counters</li>
+ * <li>discretizer and feature evaluator sections: kind (none, compact or serialized), class
+ * name, length in bytes and state</li>
+ * <li>selected features</li>
+ * <li>base learner (serialized)</li>
+ * <li>CRC32 of all the previous bytes</li>
+ * </ul>
+ *
+ * The classifier is restored with the options stored in the checkpoint. Its model context
+ * (header) must be set before restoring a checkpoint with selected features.
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+public final class PipelineCheckpoint {
+
+	/** "MRCP" */
+	public static final int MAGIC = 0x5043524D;
+
+	/** Current version of the format */
+	public static final int VERSION = 1;
+
+	private static final byte NONE = 0, COMPACT = 1, SERIALIZED = 2;
+
+	private PipelineCheckpoint() {
+	}
+
+	/**
+	 * Write a checkpoint of a classifier. The checkpoint is written to a temporary file
+	 * which then replaces the given one, so a previous checkpoint is never left half-written.
+	 * With background updates, it waits until all the queued instances are incorporated.
+	 * @param learner Classifier to checkpoint.
+	 * @param file Destination file.
+	 * @throws IOException if the checkpoint can not be written.
+	 */
+	public static void write(ReductionClassifier learner, File file) throws IOException {
+		if(learner.updater != null) {
+			try {
+				learner.updater.awaitUpdates();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the scheme updater");
+			}
+		}
+		CheckpointBuffer out = new CheckpointBuffer(1 << 16);
+		try {
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.putString(learner.getOptions().getAsCLIString());
+			out.putInt(learner.totalCount);
+			out.putInt(learner.classified);
+			out.putInt(learner.correctlyClassified);
+			out.putDouble(learner.trainingWeightSeenByModel());
+			writeStage(out, learner.discretizer);
+			writeStage(out, learner.fselector);
+			out.putInts(learner.projection == null ? null : learner.projection.getSelected());
+			out.putObject(learner.wrapperClassifier);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		ByteBuffer buffer = out.buffer();
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 0, buffer.position());
+		out.putLong(crc.getValue());
+
+		buffer = out.buffer();
+		buffer.flip();
+		Path path = file.toPath().toAbsolutePath();
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while(buffer.hasRemaining())
+				channel.write(buffer);
+			channel.force(true);
+		}
+		try {
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Restore a classifier from a checkpoint, replacing its options and its current state.
+	 * @param learner Classifier to restore.
+	 * @param file Checkpoint file.
+	 * @throws IOException if the file is not a valid checkpoint or it can not be read.
+	 */
+	public static void read(ReductionClassifier learner, File file) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if(size < 16 || size > Integer.MAX_VALUE)
+				throw new IOException("Not a checkpoint: " + file);
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		CheckpointBuffer in = new CheckpointBuffer(buffer);
+		if(in.getInt() != MAGIC)
+			throw new IOException("Not a checkpoint: " + file);
+		int version = in.getInt();
+		if(version < 1 || version > VERSION)
+			throw new IOException("Unsupported checkpoint version " + version + ": " + file);
+		ByteBuffer content = buffer.duplicate();
+		content.position(0).limit(buffer.limit() - 8);
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		if(crc.getValue() != buffer.getLong(buffer.limit() - 8))
+			throw new IOException("Corrupted checkpoint (bad checksum): " + file);
+
+		learner.getOptions().setViaCLIString(in.getString());
+		learner.resetLearning();
+		try {
+			learner.totalCount = in.getInt();
+			learner.classified = in.getInt();
+			learner.correctlyClassified = in.getInt();
+			learner.setTrainingWeightSeenByModel(in.getDouble());
+			learner.discretizer = (MOADiscretize) readStage(in, learner.createDiscretizer());
+			learner.fselector = (MOAAttributeEvaluator) readStage(in, learner.createEvaluator());
+			int[] selected = in.getInts();
+			if(selected != null) {
+				InstancesHeader header = learner.getModelContext();
+				if(header == null)
+					throw new IOException("The model context must be set to restore the selected features");
+				learner.projection = new FeatureProjection(header, selected);
+				for (int att : selected)
+					learner.selectedFeatures.add(att);
+				learner.selectedFeatures.add(header.classIndex());
+			}
+			learner.wrapperClassifier = (AbstractClassifier) in.getObject();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static void writeStage(CheckpointBuffer out, Object stage) throws IOException {
+		if(stage == null) {
+			out.putByte(NONE);
+			return;
+		}
+		out.putByte(stage instanceof Checkpointable ? COMPACT : SERIALIZED);
+		out.putString(stage.getClass().getName());
+		int start = out.buffer().position();
+		out.putInt(0);
+		if(stage instanceof Checkpointable)
+			((Checkpointable) stage).writeState(out);
+		else
+			out.putObject(stage);
+		out.buffer().putInt(start, out.buffer().position() - start - 4);
+	}
+
+	/**
+	 * Read a stage section.
+	 * @param fresh New stage created from the options (restored in place for compact sections).
+	 */
+	private static Object readStage(CheckpointBuffer in, Object fresh) throws IOException {
+		byte kind = in.getByte();
+		if(kind == NONE)
+			return null;
+		String name = in.getString();
+		int length = in.getInt();
+		int start = in.buffer().position();
+		Object stage;
+		if(kind == COMPACT) {
+			if(fresh == null || !fresh.getClass().getName().equals(name))
+				throw new IOException("Checkpoint of " + name + " does not match the options");
+			((Checkpointable) fresh).readState(in);
+			stage = fresh;
+		} else if(kind == SERIALIZED) {
+			stage = in.getObject();
+		} else {
+			throw new IOException("Unknown section kind: " + kind);
+		}
+		if(in.buffer().position() - start != length)
+			throw new IOException("Corrupted checkpoint section: " + name);
+		return stage;
+	}
+}
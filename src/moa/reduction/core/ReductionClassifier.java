@@ -19,7 +19,7 @@
  */
 package moa.reduction.core;
 
-import weka.attributeSelection.*; 
+import weka.attributeSelection.AttributeEvaluator;
 import moa.classifiers.AbstractClassifier;
 import moa.classifiers.bayes.NaiveBayes;
 import moa.classifiers.core.attributeclassobservers.AttributeClassObserver;
@@ -28,7 +28,6 @@ import moa.classifiers.trees.HoeffdingTree;
 import moa.core.AutoExpandVector;
 import moa.core.Measurement;
 import moa.core.StringUtils;
-import moa.core.TimingUtils;
 import moa.reduction.bayes.IDAdiscretize;
 import moa.reduction.bayes.IFFDdiscretize;
 import moa.reduction.bayes.IncrInfoThAttributeEval;
@@ -37,15 +36,18 @@ import moa.reduction.bayes.OCdiscretize;
 import moa.reduction.bayes.OFSGDAttributeEval;
 import moa.reduction.bayes.PIDdiscretize;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
+import com.github.javacliparser.FileOption;
 import com.github.javacliparser.IntOption;
 import com.yahoo.labs.samoa.instances.Instance;
-import com.yahoo.labs.samoa.instances.WekaToSamoaInstanceConverter;
 
-import weka.core.Attribute;
 
 /**
  * Wrapper classifier with several preprocessing methods.
@@ -55,7 +57,7 @@ import weka.core.Attribute;
  * @author Sergio Ramirez (sramirez@decsai.ugr.es)
  * @version $Revision: 2 $
  */
-public class ReductionClassifier extends AbstractClassifier {
+public class ReductionClassifier extends AbstractClassifier implements AutoCloseable {
 
     private static final long serialVersionUID = 1L;
 
@@ -64,37 +66,75 @@ public class ReductionClassifier extends AbstractClassifier {
         return "Wrapper classifier with several preprocessing methods: up to date, only multinomial NB and SGD logistic regresion are considered.";
     }
     
-    protected static AttributeSelection selector = null;
     protected AutoExpandVector<AttributeClassObserver> attributeObservers;
 
-    public static IntOption numFeaturesOption = new IntOption("numFeatures", 'f', 
+    public IntOption numFeaturesOption = new IntOption("numFeatures", 'f', 
     		"The number of features to select", 10, 1, Integer.MAX_VALUE);
-    public static IntOption fsmethodOption = new IntOption("fsMethod", 'm', 
+    public IntOption fsmethodOption = new IntOption("fsMethod", 'm', 
     		"Infotheoretic method to be used in feature selection: 0. No method. 1. InfoGain 2. Symmetrical Uncertainty 3. OFSGD", 0, 0, 3);
-    public static IntOption discmethodOption = new IntOption("discMethod", 'd', 
+    public IntOption discmethodOption = new IntOption("discMethod", 'd', 
     		"Discretization method to be used: 0. No method. 1. PiD 2. IFFD 3. Online Chi-Merge 4. IDA 5. RebDiscretize", 5, 0, 5);
-    public static IntOption winSizeOption = new IntOption("winSize", 'w', 
+    public IntOption winSizeOption = new IntOption("winSize", 'w', 
     		"Window size for model updates", 5000, 1, Integer.MAX_VALUE);  
-    public static IntOption thresholdOption = new IntOption("threshold", 't', 
+    public IntOption thresholdOption = new IntOption("threshold", 't', 
     		"Threshold for initialization", 10000, 1, Integer.MAX_VALUE);  
-    public static IntOption decimalsOption = new IntOption("decimals", 'e', 
+    public IntOption decimalsOption = new IntOption("decimals", 'e', 
     		"Number of decimals to round", 3, 0, Integer.MAX_VALUE); 
-    public static IntOption maxLabelsOption = new IntOption("maxLabels", 'l', 
+    public IntOption maxLabelsOption = new IntOption("maxLabels", 'l', 
     		"Number of different labels to use in discretization", 10000, 10, Integer.MAX_VALUE); 
     public IntOption numClassesOption = new IntOption("numClasses", 'c', 
     		"Number of classes for this problem (Online Chi-Merge)", 100, 1, Integer.MAX_VALUE);   
     public IntOption baseClassifier = new IntOption("baseClassifier", 'b', 
     		"Base classifier to be used: 0. NB 1. LR (SGD Multiclass) 2. Hoeffding Tree", 2, 0, 2); 
+    public IntOption asyncOption = new IntOption("asyncUpdates", 'a', 
+    		"Update the discretization scheme in a background thread: 0. No 1. Yes", 0, 0, 1); 
+    public IntOption queueSizeOption = new IntOption("queueSize", 'q', 
+    		"Maximum number of instances waiting to update the discretization scheme (background updates)", 1000, 1, Integer.MAX_VALUE); 
+    public IntOption parallelThresholdOption = new IntOption("parallelThreshold", 'p', 
+    		"Number of attributes per task when updating the discretizer in parallel (0. Sequential updates)", 0, 0, Integer.MAX_VALUE); 
+    public IntOption lofBudgetOption = new IntOption("lofBudget", 'g', 
+    		"Global memory budget (KB) for the points kept by RebDiscretize (LOFD), the oldest ones are evicted first. 0. Unbounded", 0, 0, Integer.MAX_VALUE); 
+    public FileOption cutPointsFileOption = new FileOption("cutPointsFile", 'k', 
+    		"File with initial cut points (e.g. computed offline), applied until the discretizer generates its own scheme", null, "txt", false); 
     
-    protected static MOAAttributeEvaluator fselector = null;
-    protected static MOADiscretize discretizer = null;
+    protected MOAAttributeEvaluator fselector = null;
+    protected MOADiscretize discretizer = null;
     protected int totalCount = 0, classified = 0, correctlyClassified = 0;
     protected Set<Integer> selectedFeatures = new HashSet<Integer>();
+    protected FeatureProjection projection = null;
     protected AbstractClassifier wrapperClassifier;
+    protected transient SchemeUpdater updater = null;
+    // Last instance predicted and its preprocessed forms (discretized, then projected), 
+    // reused if the same instance is trained next (test-then-train)
+    protected transient Instance lastInstance = null, lastDiscretized = null, lastSelected = null;
+    protected transient FeatureProjection lastProjection = null;
+    protected transient double lastWeight, lastClassValue;
+    protected int reusedCount = 0;
+    // Time spent in each stage of the pipeline
+    protected StageStatistics fsUpdateStats = new StageStatistics("FS update"), 
+    		rankingStats = new StageStatistics("FS ranking"),
+    		discUpdateStats = new StageStatistics("discretizer update"),
+    		discApplyStats = new StageStatistics("discretizer apply"),
+    		trainStats = new StageStatistics("base learner train"),
+    		predictStats = new StageStatistics("base learner predict");
 	//private double sumTime, sumTime2;
     
-    public ReductionClassifier() {
-		// TODO Auto-generated constructor stub
+    @Override
+    public void resetLearningImpl() {
+        this.attributeObservers = new AutoExpandVector<AttributeClassObserver>();
+        totalCount = 0; classified = 0; correctlyClassified = 0;
+        forgetPrediction();
+        reusedCount = 0;
+        // The whole pipeline belongs to this learner, so several learners can
+        // run concurrently (one per thread) in the same JVM.
+        close();
+        fselector = null;
+        discretizer = null;
+        projection = null;
+        selectedFeatures.clear();
+        fsUpdateStats.reset(); rankingStats.reset();
+        discUpdateStats.reset(); discApplyStats.reset();
+        trainStats.reset(); predictStats.reset();
     	if(baseClassifier.getValue() == 0){
     		wrapperClassifier = new NaiveBayes();
     		wrapperClassifier.resetLearningImpl();
@@ -108,88 +148,113 @@ public class ReductionClassifier extends AbstractClassifier {
     		wrapperClassifier.resetLearningImpl();
     	}
     }
-    
-    @Override
-    public void resetLearningImpl() {
-        this.attributeObservers = new AutoExpandVector<AttributeClassObserver>();
-        totalCount = 0; classified = 0; correctlyClassified = 0;
-    }
 
     @Override
     public void trainOnInstanceImpl(Instance inst) {
 
-        Instance rinst = inst.copy();
-    	// Update the FS evaluator (no selection is applied here)
+        Instance rinst = inst;
+    	// Update the FS evaluator, and the selection when the ranking is due
     	if(fsmethodOption.getValue() != 0) {
     		if(fselector == null) {
-    			if(fsmethodOption.getValue() == 3) {
-    	    		fselector = new OFSGDAttributeEval(numFeaturesOption.getValue());
-    	    	} else if (fsmethodOption.getValue() == 2 || fsmethodOption.getValue() == 1){
-    	    		fselector = new IncrInfoThAttributeEval(fsmethodOption.getValue());
-    	    	} else {
-    	    		//fselector = null;
-    	    	}
+    			fselector = createEvaluator();
     		}
+    		long start = System.nanoTime();
     		try {
 				fselector.updateEvaluator(inst);
 			} catch (Exception e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
 			}
+    		fsUpdateStats.record(System.nanoTime() - start);
+    		if(fselector != null && fselector.isUpdated() && totalCount % winSizeOption.getValue() == 0) {
+    			start = System.nanoTime();
+    			updateSelection(inst);
+    			rankingStats.record(System.nanoTime() - start);
+    		}
     	}
 	    	
-    	// Update the discretization scheme, and apply it to the given instance
-    	//long evaluateStartTime = TimingUtils.getNanoCPUTimeOfCurrentThread();
-		
+    	// Update the discretization scheme, and get the one to apply to the given instance
+    	SchemeSnapshot scheme = null;
     	if(discmethodOption.getValue() != 0) {
     		if(discretizer == null) {
-    			if(discmethodOption.getValue() == 1) {
-    	    		discretizer = new PIDdiscretize();
-    	    	} else if(discmethodOption.getValue() == 2) {
-    	    		discretizer = new IFFDdiscretize();	
-    	    	} else if(discmethodOption.getValue() == 3) {
-    	    		discretizer = new OCdiscretize(this.numClassesOption.getValue());
-    	    	} else if(discmethodOption.getValue() == 4){
-    	    		discretizer = new IDAdiscretize();
-    	    	} else {
-    	    		discretizer = new LOFDiscretizer(winSizeOption.getValue(), 
-    	    				thresholdOption.getValue(), decimalsOption.getValue(), 
-    	    				maxLabelsOption.getValue());
-    	    	}
+    			discretizer = createDiscretizer();
+    			scheme = discretizer.publishScheme(inst.dataset());
     		} else {
-    			discretizer.updateEvaluator(inst);
-    			if(totalCount == thresholdOption.getValue() + 1)
+    			long start = System.nanoTime();
+    			if(asyncOption.getValue() == 1) {
+    				// The discretizer belongs to the updater from now on
+    				if(updater == null)
+    					updater = new SchemeUpdater(discretizer, queueSizeOption.getValue(), inst.dataset());
+    				try {
+						updater.update(inst);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						e.printStackTrace();
+					}
+    			} else {
+    				discretizer.updateEvaluator(inst);
+    				// Publishing the new scheme is part of the update
+    				scheme = discretizer.publishScheme(inst.dataset());
+    			}
+    			// In background mode, only the time to queue the instance
+    			discUpdateStats.record(System.nanoTime() - start);
+    			if(totalCount == thresholdOption.getValue() + 1) {
+    				// The base learner restarts with the first scheme built by the discretizer,
+    				// so in background mode that scheme must be published before
+    				if(updater != null) {
+    					try {
+							updater.awaitUpdates();
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							e.printStackTrace();
+						}
+    				}
     				wrapperClassifier.resetLearningImpl();
-
+    			}
+    			if(updater != null)
+    				scheme = updater.getScheme();
     		}
-    		//System.out.println("Number of new intervals: " + discretizer.getNumberIntervals());	
-    		rinst = discretizer.applyDiscretization(inst);
+    	}
+    	// Reuse the values already discretized for prediction if the scheme has not changed,
+    	// otherwise apply it
+    	boolean reuse = isLastPredicted(inst) && isDiscretizedWith(lastDiscretized, inst, scheme);
+    	if(reuse) {
+    		rinst = lastDiscretized;
+    		reusedCount++;
+    	} else if(scheme != null) {
+    		long start = System.nanoTime();
+    		rinst = scheme.apply(inst);
+    		discApplyStats.record(System.nanoTime() - start);
     	}
     	
-    	//sumTime += TimingUtils.nanoTimeToSeconds(TimingUtils.getNanoCPUTimeOfCurrentThread() - evaluateStartTime);
-        for (int i = 0; i < rinst.numAttributes() - 1; i++) {
-        	if(rinst.value(i) == -1) {
-            	System.out.println("Value changed");
-            	rinst.setValue(i, 0);            	
-            }
-		}
+        if(reuse && projection == lastProjection)
+        	rinst = lastSelected;
+        else
+        	rinst = selectFeatures(rinst);
+        forgetPrediction();
+        long start = System.nanoTime();
         wrapperClassifier.trainOnInstance(rinst);
+        trainStats.record(System.nanoTime() - start);
     	totalCount++;
-        //if(totalCount == 50000)
-        	//System.out.println("Total time: " + sumTime);
     }
 
     @Override
     public double[] getVotesForInstance(Instance inst) {
-    	// Feature selection process performed before
-    	
-    	Instance sinst = inst.copy();
-    	if(fsmethodOption.getValue() != 0 && fselector != null) 
-    		sinst = performFS(sinst);
+    	// Same preprocessing as in training: discretization, then feature selection
+    	Instance sinst = inst;
     	if(discmethodOption.getValue() != 0 && discretizer != null) 
-    		sinst = discretizer.applyDiscretization(sinst);
+    		sinst = applyDiscretization(sinst);
+    	lastInstance = inst;
+    	lastDiscretized = sinst;
+    	sinst = selectFeatures(sinst);
+    	lastSelected = sinst;
+    	lastProjection = projection;
+    	lastWeight = inst.weight();
+    	lastClassValue = inst.classValue();
     	
+    	long start = System.nanoTime();
     	double[] finalVotes = wrapperClassifier.getVotesForInstance(sinst);
+    	predictStats.record(System.nanoTime() - start);
     	
         double maxValue = Integer.MIN_VALUE;
         int maxIndex = Integer.MIN_VALUE;
@@ -207,7 +272,65 @@ public class ReductionClassifier extends AbstractClassifier {
 
     @Override
     protected Measurement[] getModelMeasurementsImpl() {
-        return null;
+    	List<Measurement> measurements = new ArrayList<Measurement>();
+    	fsUpdateStats.addMeasurements(measurements);
+    	rankingStats.addMeasurements(measurements);
+    	discUpdateStats.addMeasurements(measurements);
+    	discApplyStats.addMeasurements(measurements);
+    	trainStats.addMeasurements(measurements);
+    	predictStats.addMeasurements(measurements);
+    	measurements.add(new Measurement("preprocessing reused (instances)", reusedCount));
+    	measurements.add(new Measurement("selected features", selectedFeatures.isEmpty() ? 0 : selectedFeatures.size() - 1));
+    	measurements.add(new Measurement("discretizer size (bytes)", estimateDiscretizerByteSize()));
+    	measurements.add(new Measurement("feature evaluator size (bytes)", fselector == null ? 0 : fselector.estimateByteSize()));
+    	measurements.add(new Measurement("reduction size (bytes)", estimateReductionByteSize()));
+        return measurements.toArray(new Measurement[measurements.size()]);
+    }
+
+    /**
+     * Stop the background scheme updater, if any (its thread is not released otherwise).
+     * Instances still queued are discarded. The learner can keep being used afterwards, a 
+     * new updater is started with the next training instance.
+     */
+    @Override
+    public void close() {
+        if(updater != null) {
+        	updater.close();
+        	updater = null;
+        }
+    }
+
+    /**
+     * Estimated memory used by the reduction stages (discretizer, feature evaluator and
+     * selected features), without the base classifier. It does not need the sizeofag agent.
+     * @return estimated size in bytes
+     */
+    public long estimateReductionByteSize() {
+    	long size = estimateDiscretizerByteSize();
+    	if(fselector != null)
+    		size += fselector.estimateByteSize();
+    	if(projection != null)
+    		size += projection.estimateByteSize();
+    	return size;
+    }
+
+    /**
+     * Estimated memory used by the discretizer. With background updates, it waits until the
+     * updater is idle, since the discretizer is being modified by its worker meanwhile.
+     * @return estimated size in bytes (0 if interrupted while waiting)
+     */
+    private long estimateDiscretizerByteSize() {
+    	if(discretizer == null)
+    		return 0;
+    	if(updater != null) {
+    		try {
+    			updater.awaitUpdates();
+    		} catch (InterruptedException e) {
+    			Thread.currentThread().interrupt();
+    			return 0;
+    		}
+    	}
+    	return discretizer.estimateByteSize();
     }
 
     @Override
@@ -221,43 +344,150 @@ public class ReductionClassifier extends AbstractClassifier {
         return false;
     }
     
-    private Instance performFS(Instance rinst) {
-    	// Feature selection process performed before
-		weka.core.Instance winst = new weka.core.DenseInstance(rinst.weight(), rinst.toDoubleArray());
-		
-		if(fselector != null) {
-			if(fselector.isUpdated() && totalCount % winSizeOption.getValue() == 0) {
-		    	fselector.applySelection();
-				selector = new AttributeSelection();
-				Ranker ranker = new Ranker();
-				ranker.setNumToSelect(Math.min(numFeaturesOption.getValue(), winst.numAttributes() - 1));
-				selector.setEvaluator((ASEvaluation) fselector);
-				selector.setSearch(ranker);
-		    	
-				ArrayList<Attribute> list = new ArrayList<Attribute>();
-			  	//ArrayList<Attribute> list = Collections.list(winst.enumerateAttributes());
-			  	//list.add(winst.classAttribute());
-				for(int i = 0; i < rinst.numAttributes(); i++) 
-					list.add(new Attribute(rinst.attribute(i).name(), i));
-				//ArrayList<Attribute> list = Collections.list(winst.enumerateAttributes());
-				//list.add(winst.classAttribute());
-			  	weka.core.Instances single = new weka.core.Instances ("single", list, 1);
-			  	single.setClassIndex(rinst.classIndex());
-			  	single.add(winst);
-			  	try {
-					selector.SelectAttributes(single);
-					System.out.println("Selected features: " + selector.toResultsString());
-					selectedFeatures.clear();
-					for(int att : selector.selectedAttributes())
-						selectedFeatures.add(att);
-					WekaToSamoaInstanceConverter convWS = new WekaToSamoaInstanceConverter();
-					return convWS.samoaInstance(selector.reduceDimensionality(winst));
-				} catch (Exception e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
+    /**
+     * Create the FS evaluator given by the options.
+     * @return the evaluator, or null if no FS method is used
+     */
+    protected MOAAttributeEvaluator createEvaluator() {
+    	if(fsmethodOption.getValue() == 3) {
+    		return new OFSGDAttributeEval(numFeaturesOption.getValue());
+    	} else if (fsmethodOption.getValue() == 2 || fsmethodOption.getValue() == 1){
+    		return new IncrInfoThAttributeEval(fsmethodOption.getValue());
+    	}
+    	return null;
+    }
+    
+    /**
+     * Create the discretizer given by the options.
+     * @return the discretizer, or null if no discretization method is used
+     */
+    protected MOADiscretize createDiscretizer() {
+    	MOADiscretize disc;
+    	if(discmethodOption.getValue() == 0) {
+    		return null;
+    	} else if(discmethodOption.getValue() == 1) {
+    		disc = new PIDdiscretize();
+    	} else if(discmethodOption.getValue() == 2) {
+    		disc = new IFFDdiscretize();	
+    	} else if(discmethodOption.getValue() == 3) {
+    		disc = new OCdiscretize(this.numClassesOption.getValue());
+    	} else if(discmethodOption.getValue() == 4){
+    		disc = new IDAdiscretize();
+    	} else {
+    		disc = new LOFDiscretizer(winSizeOption.getValue(), 
+    				thresholdOption.getValue(), decimalsOption.getValue(), 
+    				maxLabelsOption.getValue());
+    		((LOFDiscretizer) disc).setMemoryBudget(lofBudgetOption.getValue() * 1024L);
+    	}
+    	disc.setParallelThreshold(parallelThresholdOption.getValue());
+    	if(cutPointsFileOption.getFile() != null) {
+    		try {
+				disc.loadCutPoints(cutPointsFileOption.getFile());
+			} catch (IOException e) {
+				// A wrong file must not silently fall back to a cold start
+				throw new UncheckedIOException("Can not load the cut points: " + e.getMessage(), e);
 			}
     	}
-		return rinst;
+    	return disc;
+    }
+    
+    /**
+     * Write a binary checkpoint of the whole pipeline (see {@link PipelineCheckpoint}).
+     * @param file destination file
+     * @throws IOException if the checkpoint can not be written
+     */
+    public void saveCheckpoint(File file) throws IOException {
+    	PipelineCheckpoint.write(this, file);
+    }
+    
+    /**
+     * Restore the pipeline (options included) from a binary checkpoint.
+     * @param file checkpoint file
+     * @throws IOException if the checkpoint is not valid
+     */
+    public void restoreCheckpoint(File file) throws IOException {
+    	PipelineCheckpoint.read(this, file);
+    }
+    
+    void setTrainingWeightSeenByModel(double weight) {
+    	trainingWeightSeenByModel = weight;
+    }
+    
+    /**
+     * Discretize an instance with the current scheme, or with the last one published
+     * by the background updater.
+     */
+    private Instance applyDiscretization(Instance inst) {
+    	long start = System.nanoTime();
+    	Instance dinst = updater != null ? updater.apply(inst) : discretizer.applyDiscretization(inst);
+    	discApplyStats.record(System.nanoTime() - start);
+    	return dinst;
+    }
+    
+    /**
+     * Check whether an instance is the last one predicted, unchanged since then (identity,
+     * weight and class value are compared).
+     */
+    private boolean isLastPredicted(Instance inst) {
+    	return inst == lastInstance && Double.compare(inst.weight(), lastWeight) == 0
+    			&& Double.compare(inst.classValue(), lastClassValue) == 0;
+    }
+    
+    /**
+     * Check whether a discretized form of an instance comes from a given scheme snapshot 
+     * (or is the instance itself if there is no scheme).
+     */
+    private static boolean isDiscretizedWith(Instance dinst, Instance inst, SchemeSnapshot scheme) {
+    	if(scheme == null)
+    		return dinst == inst;
+    	return dinst instanceof DiscretizedInstance && ((DiscretizedInstance) dinst).getSource() == inst
+    			&& ((DiscretizedInstance) dinst).getScheme() == scheme;
+    }
+    
+    private void forgetPrediction() {
+    	lastInstance = null;
+    	lastDiscretized = null;
+    	lastSelected = null;
+    	lastProjection = null;
+    }
+    
+    /**
+     * Apply the current selection to an instance before passing it to the base learner.
+     * Hoeffding trees and SGD mask the deselected attributes themselves, so their
+     * instances keep all values; for other learners deselected values are hidden.
+     */
+    private Instance selectFeatures(Instance inst) {
+    	if(projection == null || wrapperClassifier instanceof HoeffdingTree 
+    			|| wrapperClassifier instanceof SGDMultiClass)
+    		return inst;
+    	return projection.hide(inst);
+    }
+    
+    /**
+     * Rank the attributes with the FS evaluator and, if the selection changes, restrict 
+     * the base learner to the new one.
+     * @throws IllegalStateException if the evaluator can not score the attributes (the 
+     * current selection is kept).
+     */
+    private void updateSelection(Instance inst) {
+    	fselector.applySelection();
+    	int[] selected;
+	  	try {
+	  		selected = FeatureProjection.rank((AttributeEvaluator) fselector, inst.dataset(), 
+	  				Math.min(numFeaturesOption.getValue(), inst.numAttributes() - 1));
+		} catch (Exception e) {
+			throw new IllegalStateException("The attributes can not be ranked", e);
+		}
+  		if(projection == null || !projection.isProjection(inst.dataset(), selected)) {
+  			projection = new FeatureProjection(inst.dataset(), selected);
+  			if(wrapperClassifier instanceof HoeffdingTree)
+  				((HoeffdingTree) wrapperClassifier).setAttributeMask(projection.getMask());
+  			else if(wrapperClassifier instanceof SGDMultiClass)
+  				((SGDMultiClass) wrapperClassifier).setAttributeMask(projection.getMask());
+  		}
+		selectedFeatures.clear();
+		for(int att : selected)
+			selectedFeatures.add(att);
+		selectedFeatures.add(inst.classIndex());
     }
 }
\ No newline at end of file
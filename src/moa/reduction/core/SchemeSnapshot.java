@@ -0,0 +1,223 @@
+package moa.reduction.core;
+
+import java.util.Arrays;
+
+import weka.core.Utils;
+
+import com.yahoo.labs.samoa.instances.Attribute;
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+/**
+ * Immutable copy of a discretization scheme (cut points, labels and discretized header) for
+ * a given input format. Discretizers replace their cut point arrays instead of modifying them,
+ * so a snapshot only copies the outer arrays, and it stays valid while the discretizer keeps
+ * being updated. It can therefore be read from other threads than the one updating the scheme.
+ *
+ * <p>Lookups are compiled lazily per attribute. They are immutable, so compiling the same
+ * lookup twice from different threads is harmless.</p>
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+public class SchemeSnapshot {
+
+	protected final double[][] cutPoints;
+	protected final String[][] labels;
+
+	/** Whether each attribute is discretized (selected and numeric) */
+	protected final boolean[] discretized;
+
+	protected final Instances inputFormat;
+	protected final Instances header;
+	protected final int version;
+
+	/** Compiled cut points, null until first used */
+	protected final CutPointLookup[] lookups;
+
+	/** Discretized attributes whose zero is not mapped to zero (ascending), null until first used */
+	protected int[] shiftedZeros = null;
+
+	/**
+	 * Create a snapshot.
+	 * @param cutPoints Cut points by attribute (outer array is copied).
+	 * @param labels Labels by attribute (outer array is copied, may be null).
+	 * @param discretized Whether each attribute is discretized.
+	 * @param inputFormat Header of the raw instances.
+	 * @param header Discretized header.
+	 * @param version Version of the scheme in the discretizer.
+	 * @param previous Previous snapshot, whose lookups are reused for unchanged attributes (may be null).
+	 */
+	public SchemeSnapshot(double[][] cutPoints, String[][] labels, boolean[] discretized,
+			Instances inputFormat, Instances header, int version, SchemeSnapshot previous) {
+		this.cutPoints = cutPoints.clone();
+		this.labels = labels != null ? labels.clone() : null;
+		this.discretized = discretized;
+		this.inputFormat = inputFormat;
+		this.header = header;
+		this.version = version;
+		this.lookups = new CutPointLookup[cutPoints.length];
+		if(previous != null && previous.lookups.length == lookups.length) {
+			for (int i = 0; i < lookups.length; i++) {
+				CutPointLookup lookup = previous.lookups[i];
+				if(lookup != null && lookup.isBuiltFrom(this.cutPoints[i], getLabels(i)))
+					lookups[i] = lookup;
+			}
+		}
+	}
+
+	/**
+	 * @return Version of the scheme in the discretizer when the snapshot was taken.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return Header of the raw instances.
+	 */
+	public Instances getInputFormat() {
+		return inputFormat;
+	}
+
+	/**
+	 * Check whether a header describes the same input format as this snapshot. Instances
+	 * usually get their own header object (SAMOA wraps the dataset on each setDataset), 
+	 * so headers can not be compared by identity.
+	 * @param format Header of a raw instance.
+	 * @return True if the snapshot can be applied to instances with this header.
+	 */
+	public boolean matchesFormat(Instances format) {
+		return sameFormat(inputFormat, format);
+	}
+
+	/**
+	 * Compare two headers attribute by attribute. All the wrappers of a dataset share its 
+	 * attribute objects, so attributes are first compared by identity, and only compared by
+	 * name, type and nominal values if they are different objects (e.g. a header rebuilt 
+	 * with the same schema). SAMOA already indexes every attribute when it wraps a dataset,
+	 * so this check does not change the cost per instance.
+	 * @param a First header.
+	 * @param b Second header.
+	 * @return True if both headers describe the same format.
+	 */
+	public static boolean sameFormat(Instances a, Instances b) {
+		if(a == b)
+			return true;
+		if(a == null || b == null)
+			return false;
+		int n = a.numAttributes();
+		if(n != b.numAttributes() || a.classIndex() != b.classIndex())
+			return false;
+		for (int i = 0; i < n; i++) {
+			if(!sameAttribute(a.attribute(i), b.attribute(i)))
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean sameAttribute(Attribute a, Attribute b) {
+		if(a == b)
+			return true;
+		if(a == null || b == null || a.isNumeric() != b.isNumeric() || a.isNominal() != b.isNominal()
+				|| !a.name().equals(b.name()))
+			return false;
+		return !a.isNominal() || a.getAttributeValues().equals(b.getAttributeValues());
+	}
+
+	/**
+	 * @return Discretized header.
+	 */
+	public Instances getHeader() {
+		return header;
+	}
+
+	/**
+	 * @param attIndex Attribute index.
+	 * @return True if the attribute is mapped to bins.
+	 */
+	public boolean isDiscretized(int attIndex) {
+		return attIndex < discretized.length && discretized[attIndex];
+	}
+
+	/**
+	 * Compiled cut points of an attribute.
+	 * @param attIndex Attribute index.
+	 * @return Lookup for the attribute, or null if it has no cut points.
+	 */
+	public CutPointLookup getLookup(int attIndex) {
+		if(cutPoints[attIndex] == null)
+			return null;
+		CutPointLookup lookup = lookups[attIndex];
+		if(lookup == null) {
+			lookup = new CutPointLookup(cutPoints[attIndex], getLabels(attIndex));
+			lookups[attIndex] = lookup;
+		}
+		return lookup;
+	}
+
+	private String[] getLabels(int attIndex) {
+		return labels != null ? labels[attIndex] : null;
+	}
+
+	/**
+	 * Discretize a single value of an instance.
+	 * @param instance Raw instance.
+	 * @param i Attribute index.
+	 * @return Discretized value (or the raw one if the attribute is not discretized).
+	 */
+	public double discretizeValue(Instance instance, int i) {
+		if(isDiscretized(i)) {
+			if (instance.isMissing(i)) {
+				return Utils.missingValue();
+			}
+			CutPointLookup lookup = getLookup(i);
+			if (lookup == null) {
+				return 0;
+			}
+			return lookup.value((float) instance.value(i));
+		}
+		return instance.value(i);
+	}
+
+	/**
+	 * Discretized value of zero for an attribute, i.e., the value of the attribute in the
+	 * discretized instance when it is not stored in a sparse instance.
+	 * @param attIndex Attribute index.
+	 * @return Discretized value for zero (zero if the attribute is not discretized).
+	 */
+	public double zeroValue(int attIndex) {
+		if(!isDiscretized(attIndex))
+			return 0;
+		CutPointLookup lookup = getLookup(attIndex);
+		return lookup == null ? 0 : lookup.zeroValue();
+	}
+
+	/**
+	 * Attributes whose implicit zero becomes a non-zero value once discretized, which must
+	 * be stored in discretized sparse instances. Computed once for the snapshot.
+	 * @return Attribute indices, in ascending order.
+	 */
+	public int[] getShiftedZeros() {
+		int[] shifted = shiftedZeros;
+		if(shifted == null) {
+			shifted = new int[discretized.length];
+			int n = 0;
+			for (int i = 0; i < discretized.length; i++) {
+				if(discretized[i] && zeroValue(i) != 0)
+					shifted[n++] = i;
+			}
+			shifted = Arrays.copyOf(shifted, n);
+			shiftedZeros = shifted;
+		}
+		return shifted;
+	}
+
+	/**
+	 * Discretize an instance (lazily).
+	 * @param instance Raw instance.
+	 * @return Discretized view of the instance.
+	 */
+	public Instance apply(Instance instance) {
+		return new DiscretizedInstance(instance, this);
+	}
+}
@@ -0,0 +1,165 @@
+package moa.reduction.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.yahoo.labs.samoa.instances.Instance;
+import com.yahoo.labs.samoa.instances.Instances;
+
+/**
+ * Background maintenance of a discretization scheme. Instances are queued in a bounded queue
+ * and consumed by a worker thread, which updates the discretizer (in mini-batches when several
+ * instances are waiting) and then publishes an immutable snapshot of the new scheme.
+ * Instances are discretized with the last published snapshot, so the scheme lags behind the
+ * stream by at most twice the capacity of the queue (queued plus in-process instances).
+ *
+ * <p>Once the updater is started, the discretizer must only be accessed by the worker, until
+ * the updater is closed. If the worker dies, the error is thrown again in the thread that
+ * queues instances or waits for them.</p>
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+public class SchemeUpdater implements Runnable, AutoCloseable {
+
+	protected final MOADiscretize discretizer;
+	protected final BlockingQueue<Instance> pending;
+	protected final int capacity;
+	protected final AtomicReference<SchemeSnapshot> scheme = new AtomicReference<SchemeSnapshot>();
+	protected final Thread worker;
+
+	/** Error that stopped the worker, if any */
+	protected volatile Throwable failure = null;
+	/** If the worker has left its loop (set before waking up the waiting threads) */
+	protected volatile boolean stopped = false;
+
+	/** Instances queued and processed so far */
+	protected long submitted = 0, processed = 0;
+
+	/**
+	 * Create and start an updater.
+	 * @param discretizer Discretizer to maintain (owned by the updater from now on).
+	 * @param capacity Maximum number of instances waiting in the queue.
+	 */
+	public SchemeUpdater(MOADiscretize discretizer, int capacity) {
+		this(discretizer, capacity, null);
+	}
+
+	/**
+	 * Create and start an updater, publishing first the current scheme of the discretizer
+	 * (if any, e.g. restored from a checkpoint).
+	 * @param discretizer Discretizer to maintain (owned by the updater from now on).
+	 * @param capacity Maximum number of instances waiting in the queue.
+	 * @param header Header of the instances to discretize (null to wait for the first update).
+	 */
+	public SchemeUpdater(MOADiscretize discretizer, int capacity, Instances header) {
+		this.discretizer = discretizer;
+		this.capacity = capacity;
+		this.pending = new ArrayBlockingQueue<Instance>(capacity);
+		if(header != null)
+			scheme.set(discretizer.publishScheme(header));
+		this.worker = new Thread(this, "scheme-updater");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	/**
+	 * Queue an instance to update the scheme. Blocks while the queue is full.
+	 * @param inst New instance.
+	 * @throws InterruptedException if interrupted while waiting.
+	 * @throws IllegalStateException if the worker has stopped (with its error as cause).
+	 */
+	public void update(Instance inst) throws InterruptedException {
+		checkWorker();
+		synchronized (this) {
+			submitted++;
+		}
+		// The worker may die while the queue is full
+		while(!pending.offer(inst, 100, TimeUnit.MILLISECONDS))
+			checkWorker();
+	}
+
+	private void checkWorker() {
+		if(stopped || !worker.isAlive())
+			throw new IllegalStateException("The scheme updater has stopped", failure);
+	}
+
+	/**
+	 * @return Last published scheme, or null if no scheme has been generated yet.
+	 */
+	public SchemeSnapshot getScheme() {
+		return scheme.get();
+	}
+
+	/**
+	 * Discretize an instance with the last published scheme.
+	 * @param inst Raw instance.
+	 * @return Discretized instance (the original one if there is no scheme yet).
+	 */
+	public Instance apply(Instance inst) {
+		SchemeSnapshot current = scheme.get();
+		if(current == null)
+			return inst;
+		return current.apply(inst);
+	}
+
+	/**
+	 * Wait until all the queued instances have been incorporated and published.
+	 * @throws InterruptedException if interrupted while waiting.
+	 * @throws IllegalStateException if the worker has stopped before (with its error as cause).
+	 */
+	public synchronized void awaitUpdates() throws InterruptedException {
+		while(processed < submitted && !stopped && worker.isAlive())
+			wait();
+		if(processed < submitted)
+			checkWorker();
+	}
+
+	/**
+	 * Stop the worker and wait for it to finish (the discretizer can be used again by the
+	 * caller afterwards). Pending instances are discarded.
+	 */
+	@Override
+	public void close() {
+		worker.interrupt();
+		try {
+			worker.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run() {
+		List<Instance> batch = new ArrayList<Instance>(capacity);
+		try {
+			while(!Thread.currentThread().isInterrupted()) {
+				batch.add(pending.take());
+				pending.drainTo(batch, capacity - 1);
+				// Any error stops the worker, the scheme would not be updated anymore
+				if(batch.size() == 1)
+					discretizer.updateEvaluator(batch.get(0));
+				else
+					discretizer.updateEvaluator(new ColumnarBatch(batch));
+				scheme.set(discretizer.publishScheme(batch.get(0).dataset()));
+				synchronized (this) {
+					processed += batch.size();
+					notifyAll();
+				}
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			// Stopped
+		} catch (Throwable t) {
+			failure = t;
+		} finally {
+			synchronized (this) {
+				stopped = true;
+				notifyAll();
+			}
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package moa.reduction.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+import moa.core.Measurement;
+
+/**
+ * Counter and latency histogram for one stage of a reduction pipeline (FS update,
+ * discretization, base learner...). Latencies are wall-clock nanoseconds, stored in
+ * power-of-two buckets, so recording is constant time and percentiles are approximated
+ * by the upper bound of their bucket (within a factor of two).
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+public class StageStatistics implements java.io.Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	protected final String name;
+	protected final long[] buckets = new long[64];
+	protected long count = 0, totalNanos = 0, maxNanos = 0;
+
+	/**
+	 * @param name Name of the stage, used as prefix of the measurements.
+	 */
+	public StageStatistics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Record one execution of the stage.
+	 * @param nanos Elapsed time in nanoseconds.
+	 */
+	public void record(long nanos) {
+		if(nanos < 0)
+			nanos = 0;
+		buckets[nanos == 0 ? 0 : 63 - Long.numberOfLeadingZeros(nanos)]++;
+		count++;
+		totalNanos += nanos;
+		if(nanos > maxNanos)
+			maxNanos = nanos;
+	}
+
+	public void reset() {
+		Arrays.fill(buckets, 0);
+		count = 0; totalNanos = 0; maxNanos = 0;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * Approximate percentile of the latency.
+	 * @param q Quantile in [0,1].
+	 * @return Upper bound (in nanoseconds) of the bucket containing the quantile.
+	 */
+	public long getPercentile(double q) {
+		if(count == 0)
+			return 0;
+		long rank = (long) Math.ceil(q * count);
+		long acc = 0;
+		for (int b = 0; b < buckets.length - 1; b++) {
+			acc += buckets[b];
+			if(acc >= Math.max(rank, 1))
+				return Math.min((1L << (b + 1)) - 1, maxNanos);
+		}
+		return maxNanos;
+	}
+
+	/**
+	 * Add the measurements of this stage: number of executions, throughput (executions per
+	 * second spent in the stage), mean, median, 99th percentile and max latency (microseconds).
+	 * @param measurements List where measurements are appended.
+	 */
+	public void addMeasurements(List<Measurement> measurements) {
+		double micros = totalNanos / 1000.0;
+		measurements.add(new Measurement(name + " count", count));
+		measurements.add(new Measurement(name + " throughput (inst/s)",
+				totalNanos > 0 ? count / (totalNanos / 1e9) : 0));
+		measurements.add(new Measurement(name + " mean latency (us)", count > 0 ? micros / count : 0));
+		measurements.add(new Measurement(name + " p50 latency (us)", getPercentile(0.5) / 1000.0));
+		measurements.add(new Measurement(name + " p99 latency (us)", getPercentile(0.99) / 1000.0));
+		measurements.add(new Measurement(name + " max latency (us)", maxNanos / 1000.0));
+	}
+
+	@Override
+	public String toString() {
+		return name + ": " + count + " in " + (totalNanos / 1e6) + " ms (p99 "
+				+ (getPercentile(0.99) / 1000.0) + " us)";
+	}
+}
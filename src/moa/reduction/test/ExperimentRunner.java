@@ -0,0 +1,358 @@
+package moa.reduction.test;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.yahoo.labs.samoa.instances.Instance;
+
+import moa.core.TimingUtils;
+import moa.options.ClassOption;
+import moa.options.OptionHandler;
+import moa.reduction.core.ReductionClassifier;
+import moa.streams.InstanceStream;
+
+/**
+ * Headless runner that compares several ReductionClassifier configurations on the same stream.
+ * The stream is read only once: instances are read in chunks and each chunk is fanned out
+ * to all the pipelines, which run test-then-train on a pool of worker threads (a pipeline
+ * processes a chunk in a single thread, and chunks in order). The next chunk is read while
+ * the pipelines process the current one.
+ *
+ * <p>For each configuration it reports accuracy, throughput per second of wall time and of
+ * CPU time spent in the pipeline, bytes allocated by the pipeline (if supported by the JVM),
+ * serialized size of the model (-1 if MOA's sizeofag agent is not loaded) and estimated size
+ * of the reduction stages (discretizer and feature selection), as CSV or JSON. The metrics of
+ * a configuration that fails are left empty.</p>
+ *
+ * Options:
+ * <ul>
+ * <li>-stream: MOA stream, e.g. "ArffFileStream -f data.arff" (default generators.RandomRBFGenerator)</li>
+ * <li>-n: maximum number of instances (default 1,000,000)</li>
+ * <li>-config: ReductionClassifier options of a pipeline, e.g. "-d 1 -m 2 -b 0" (can be repeated)</li>
+ * <li>-grid: pipelines formed by all the combinations of option values, e.g. "d=0,1,2;m=0,1;b=0".
+ * By default, all the discretizers, FS methods and base classifiers.</li>
+ * <li>-threads: number of worker threads (default number of processors)</li>
+ * <li>-chunk: instances read per chunk (default 1000)</li>
+ * <li>-format: csv or json (default csv)</li>
+ * <li>-out: output file (default standard output)</li>
+ * </ul>
+ *
+ * @author Sergio Ramirez (sramirez at decsai dot ugr dot es)
+ */
+public class ExperimentRunner {
+
+	public static final String DEFAULT_GRID = "d=0,1,2,3,4,5;m=0,1,2,3;b=0,1,2";
+
+	private final InstanceStream stream;
+	private final List<Pipeline> pipelines;
+	private final int numThreads;
+	private final int chunkSize;
+
+	/**
+	 * One configuration of ReductionClassifier and its results.
+	 */
+	public static class Pipeline implements Callable<Void> {
+
+		private final String options;
+		private final ReductionClassifier learner;
+		private Instance[] chunk;
+		private int chunkLength;
+
+		private long numInstances = 0;
+		private long numCorrect = 0;
+		private long wallNanos = 0;
+		private long cpuNanos = 0;
+		private long allocatedBytes = 0;
+		private long modelBytes = 0;
+		private long reductionBytes = 0;
+		private boolean failed = false;
+
+		public Pipeline(String options, InstanceStream stream) {
+			this.options = options;
+			this.learner = new ReductionClassifier();
+			this.learner.getOptions().setViaCLIString(options);
+			this.learner.setModelContext(stream.getHeader());
+			this.learner.prepareForUse();
+		}
+
+		void setChunk(Instance[] chunk, int length) {
+			this.chunk = chunk;
+			this.chunkLength = length;
+		}
+
+		@Override
+		public Void call() {
+			if(failed)
+				return null;
+			ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			long cpuStart = threads.getCurrentThreadCpuTime();
+			long allocStart = getAllocatedBytes(threads);
+			long start = System.nanoTime();
+			try {
+				for (int i = 0; i < chunkLength; i++) {
+					// Instances are shared with the other pipelines, they are only read
+					Instance inst = chunk[i];
+					if(learner.correctlyClassifies(inst))
+						numCorrect++;
+					learner.trainOnInstance(inst);
+					numInstances++;
+				}
+			} catch (Exception e) {
+				System.err.println("Pipeline " + options + " failed at instance " + numInstances);
+				e.printStackTrace();
+				failed = true;
+			}
+			wallNanos += System.nanoTime() - start;
+			cpuNanos += threads.getCurrentThreadCpuTime() - cpuStart;
+			allocatedBytes += getAllocatedBytes(threads) - allocStart;
+			return null;
+		}
+
+		/**
+		 * Measure the sizes of the model if the whole stream has been processed, and close the
+		 * learner (its background scheme updater is not released otherwise).
+		 * @param completed If the stream has been processed.
+		 */
+		void finish(boolean completed) {
+			try {
+				if(completed && !failed) {
+					modelBytes = learner.measureByteSize();
+					reductionBytes = learner.estimateReductionByteSize();
+				}
+			} catch (RuntimeException e) {
+				System.err.println("Pipeline " + options + " failed at the end of the stream");
+				e.printStackTrace();
+				failed = true;
+			} finally {
+				learner.close();
+			}
+		}
+
+		public String getOptions() {
+			return options;
+		}
+
+		public ReductionClassifier getLearner() {
+			return learner;
+		}
+
+		public double getAccuracy() {
+			return numInstances == 0 ? 0 : 100.0 * numCorrect / numInstances;
+		}
+	}
+
+	public ExperimentRunner(InstanceStream stream, List<String> configurations,
+			int numThreads, int chunkSize) {
+		this.stream = stream;
+		this.numThreads = numThreads;
+		this.chunkSize = chunkSize;
+		this.pipelines = new ArrayList<Pipeline>(configurations.size());
+		for (String options : configurations) {
+			pipelines.add(new Pipeline(options, stream));
+		}
+	}
+
+	/**
+	 * Process the stream with all the pipelines. The learners are closed at the end.
+	 * @param numInstances Maximum number of instances to read.
+	 * @return Number of instances read.
+	 */
+	public long run(long numInstances) throws InterruptedException, ExecutionException {
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		Instance[] current = new Instance[chunkSize];
+		Instance[] next = new Instance[chunkSize];
+		long read = 0;
+		boolean completed = false;
+		try {
+			int length = readChunk(current, numInstances - read);
+			read += length;
+			while (length > 0) {
+				List<Future<Void>> futures = new ArrayList<Future<Void>>(pipelines.size());
+				for (Pipeline p : pipelines) {
+					p.setChunk(current, length);
+					futures.add(pool.submit(p));
+				}
+				int nextLength = readChunk(next, numInstances - read);
+				read += nextLength;
+				for (Future<Void> f : futures) {
+					f.get();
+				}
+				Instance[] tmp = current;
+				current = next;
+				next = tmp;
+				length = nextLength;
+			}
+			completed = true;
+		} finally {
+			pool.shutdownNow();
+			try {
+				// A chunk may still be running if a pipeline threw
+				pool.awaitTermination(1, TimeUnit.MINUTES);
+			} finally {
+				for (Pipeline p : pipelines) {
+					p.finish(completed);
+				}
+			}
+		}
+		return read;
+	}
+
+	private int readChunk(Instance[] chunk, long remaining) {
+		int length = 0;
+		while (length < chunk.length && length < remaining && stream.hasMoreInstances()) {
+			chunk[length++] = stream.nextInstance().getData();
+		}
+		return length;
+	}
+
+	public List<Pipeline> getPipelines() {
+		return pipelines;
+	}
+
+	/**
+	 * Print the results of all the pipelines.
+	 * @param out Output stream.
+	 * @param json JSON (array of objects) if true, CSV otherwise.
+	 */
+	public void printResults(PrintStream out, boolean json) {
+		String[] fields = {"config", "instances", "accuracy", "wall time (s)", "cpu time (s)",
+				"instances/s (wall)", "instances/s (cpu)", "allocated (MB)", "model size (bytes)", "reduction size (bytes)", "failed"};
+		if(json) {
+			out.println("[");
+		} else {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < fields.length; i++) {
+				sb.append(i == 0 ? "" : ",").append(fields[i]);
+			}
+			out.println(sb);
+		}
+		for (int p = 0; p < pipelines.size(); p++) {
+			Pipeline pipeline = pipelines.get(p);
+			double wall = pipeline.wallNanos / 1e9, cpu = pipeline.cpuNanos / 1e9;
+			Object[] values = {pipeline.options, pipeline.numInstances, pipeline.getAccuracy(), wall, cpu,
+					wall == 0 ? 0 : pipeline.numInstances / wall, cpu == 0 ? 0 : pipeline.numInstances / cpu,
+					pipeline.allocatedBytes / (1024.0 * 1024.0), pipeline.modelBytes,
+					pipeline.reductionBytes, pipeline.failed};
+			// Partial results of a failed configuration are not comparable with the rest
+			if(pipeline.failed) {
+				for (int i = 1; i < values.length - 1; i++)
+					values[i] = null;
+			}
+			StringBuilder sb = new StringBuilder(json ? "  {" : "");
+			for (int i = 0; i < fields.length; i++) {
+				if(i > 0)
+					sb.append(json ? ", " : ",");
+				if(json)
+					sb.append('"').append(fields[i]).append("\": ");
+				if(values[i] == null)
+					sb.append(json ? "null" : "");
+				else if(values[i] instanceof String)
+					sb.append('"').append(values[i]).append('"');
+				else if(values[i] instanceof Double)
+					sb.append(String.format(Locale.US, "%.4f", values[i]));
+				else
+					sb.append(values[i]);
+			}
+			if(json)
+				sb.append(p < pipelines.size() - 1 ? "}," : "}");
+			out.println(sb);
+		}
+		if(json)
+			out.println("]");
+	}
+
+	/**
+	 * Expand a grid of options into ReductionClassifier configurations.
+	 * @param grid Options and their values, e.g. "d=0,1,2;m=0,1;b=0".
+	 * @return One option string for each combination.
+	 */
+	public static List<String> expandGrid(String grid) {
+		List<String> configurations = new ArrayList<String>();
+		configurations.add("");
+		for (String param : grid.split(";")) {
+			String[] kv = param.trim().split("=");
+			if(kv.length != 2)
+				throw new IllegalArgumentException("Wrong grid parameter: " + param);
+			List<String> expanded = new ArrayList<String>();
+			for (String prefix : configurations) {
+				for (String value : kv[1].split(",")) {
+					expanded.add((prefix.isEmpty() ? "" : prefix + " ") + "-" + kv[0].trim() + " " + value.trim());
+				}
+			}
+			configurations = expanded;
+		}
+		return configurations;
+	}
+
+	private static long getAllocatedBytes(ThreadMXBean threads) {
+		if(threads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return 0;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String streamCli = "generators.RandomRBFGenerator";
+		long numInstances = 1000000;
+		List<String> configurations = new ArrayList<String>();
+		String grid = null;
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		int chunkSize = 1000;
+		boolean json = false;
+		String outFile = null;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if(args[i].equals("-stream")) {
+				streamCli = args[i + 1];
+			} else if(args[i].equals("-n")) {
+				numInstances = Long.parseLong(args[i + 1]);
+			} else if(args[i].equals("-config")) {
+				configurations.add(args[i + 1]);
+			} else if(args[i].equals("-grid")) {
+				grid = args[i + 1];
+			} else if(args[i].equals("-threads")) {
+				numThreads = Integer.parseInt(args[i + 1]);
+			} else if(args[i].equals("-chunk")) {
+				chunkSize = Integer.parseInt(args[i + 1]);
+			} else if(args[i].equals("-format")) {
+				json = args[i + 1].equalsIgnoreCase("json");
+			} else if(args[i].equals("-out")) {
+				outFile = args[i + 1];
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		if(grid != null || configurations.isEmpty())
+			configurations.addAll(expandGrid(grid == null ? DEFAULT_GRID : grid));
+
+		InstanceStream stream = (InstanceStream) ClassOption.cliStringToObject(streamCli, InstanceStream.class, null);
+		if(stream instanceof OptionHandler)
+			((OptionHandler) stream).prepareForUse();
+		ExperimentRunner runner = new ExperimentRunner(stream, configurations, numThreads, chunkSize);
+		long start = System.nanoTime();
+		long read = runner.run(numInstances);
+		System.err.println(read + " instances read, " + configurations.size() + " pipelines, "
+				+ TimingUtils.nanoTimeToSeconds(System.nanoTime() - start) + " seconds.");
+
+		PrintStream out = System.out;
+		if(outFile != null) {
+			try {
+				out = new PrintStream(outFile);
+			} catch (FileNotFoundException e) {
+				e.printStackTrace();
+			}
+		}
+		runner.printResults(out, json);
+		if(out != System.out)
+			out.close();
+	}
+}